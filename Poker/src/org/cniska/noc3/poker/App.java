@@ -3,7 +3,12 @@ package org.cniska.noc3.poker;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Application that tracks the progress of a game of Poker.
@@ -32,7 +37,10 @@ class App {
 
     private BufferedReader input;
     private Config config;
-    private Player[] players;
+    private PlayerTable players;
+    private ChipLedger ledger;
+    private Leaderboard leaderboard;
+    private SessionStore session;
 
     /**
      * Creates a new application with the given configuration.
@@ -42,6 +50,7 @@ class App {
     App(Config config) {
         this.input = new BufferedReader(new InputStreamReader(System.in));
         this.config = config;
+        this.session = new SessionStore(Paths.get(config.sessionDirectoryPath), config.numberOfRoundsBetweenSessionSnapshots);
     }
 
     /**
@@ -50,26 +59,19 @@ class App {
      * @param numberOfPlayers The number of players
      * @return The players created
      */
-    private Player[] createPlayers(int numberOfPlayers) {
-        Player[] players = new Player[numberOfPlayers];
+    private PlayerTable createPlayers(int numberOfPlayers) {
+        PlayerTable players = new PlayerTable(numberOfPlayers);
+        int[] numberOfChips = this.dealChips(numberOfPlayers);
 
         String input;
         String[] playerNameAndClub = new String[2];
 
-        int numberOfChipsDealt = 0;
-        int numberOfLeftOverChips = this.config.totalNumberOfChips % numberOfPlayers;
-        int numberOfLeftOverChipsPerPlayer = numberOfLeftOverChips > 0
-                ? (int) Math.ceil(this.config.numberOfPlayers / numberOfLeftOverChips)
-                : 0;
-        int numberOfChipsPerPlayer = this.config.totalNumberOfChips / numberOfPlayers;
-        int numberOfChips;
-
         boolean isInputValid;
 
         // a) 7p. Ber användaren ange namn och klubb för alla spelare. Efter att dessa angetts i början, kan inte flera
         // spelare registreras.
 
-        for (int i = 0; i < players.length; i++) {
+        for (int i = 0; i < numberOfPlayers; i++) {
             isInputValid = false;
 
             while (!isInputValid) {
@@ -78,31 +80,41 @@ class App {
                 isInputValid = playerNameAndClub.length == 2;
             }
 
-            numberOfChips = Logic.calculateNumberOfPlayerChips(
-                    numberOfChipsDealt,
-                    numberOfLeftOverChipsPerPlayer,
-                    numberOfChipsPerPlayer,
-                    this.config.totalNumberOfChips
-            );
+            players.add(playerNameAndClub[0], playerNameAndClub[1], numberOfChips[i]);
+        }
 
-            players[i] = new Player(playerNameAndClub[0], playerNameAndClub[1], numberOfChips);
+        return players;
+    }
+
+    /**
+     * Deals the total number of chips as evenly as possible between the given amount of players.
+     *
+     * @param numberOfPlayers The number of players
+     * @return The number of chips each player gets
+     */
+    private int[] dealChips(int numberOfPlayers) {
+        int[] numberOfChips = new int[numberOfPlayers];
 
-            numberOfChipsDealt += numberOfChips;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            numberOfChips[i] = Logic.calculateNumberOfPlayerChips(i, numberOfPlayers, this.config.totalNumberOfChips);
         }
 
-        return players;
+        return numberOfChips;
     }
 
     /**
-     * Asks the user for the result for all players from the given round.
+     * Asks the user for the result for all players from the given round and enters them in the ledger. The players
+     * themselves are not changed until the round is committed.
      *
      * @param roundNumber The round number
      */
     private void askForResultForRound(int roundNumber) {
         int playerResult;
         boolean isNumberOfChipsValid;
+        Player player;
 
-        for (Player player : this.players) {
+        for (int i = 0; i < this.players.size(); i++) {
+            player = this.players.getPlayer(i);
             isNumberOfChipsValid = false;
 
             while (!isNumberOfChipsValid) {
@@ -112,7 +124,7 @@ class App {
                 playerResult = this.askQuestionAndExpectAnInteger("Ange resultat för " + player.getName() + " representerande " + player.getClub());
 
                 if (Logic.checkThatPlayerHasEnoughChipsAfterApplyingResult(roundNumber, this.config.numberOfRounds, player, playerResult)) {
-                    player.applyResult(playerResult);
+                    this.ledger.enterResult(i, playerResult);
                     isNumberOfChipsValid = true;
                 } else {
                     UI.outputError("Resultatet du gav är inte möjligt!");
@@ -179,22 +191,129 @@ class App {
         // med Mom e). Vi antar också att en spelare aldrig spelar slut sina spelmärken, alltså ifall en spelare har ett
         // resultat på 3 efter 17 rundor, är hennes resultat för de resterade rundorna som värst -1.
 
-        Player[] previousPlayers;
         boolean isRoundValid = false;
 
         UI.outputHeading("Runda " + roundNumber + ":");
 
         while (!isRoundValid) {
-            previousPlayers = Utils.clonePlayers(this.players);
             this.askForResultForRound(roundNumber);
 
-            if (Logic.checkTotalNumberOfChipsForPlayers(this.players, this.config.totalNumberOfChips)) {
+            if (Logic.checkThatResultsAddUpToZero(this.ledger.getPendingResults())) {
+                this.ledger.commitRound();
                 isRoundValid = true;
             } else {
                 UI.outputError("Spelarnas resultat stämmer inte ihop med det totala antalet spelmärken!");
-                this.players = previousPlayers;
+                this.ledger.rollbackRound();
             }
         }
+
+        for (int i = 0; i < this.players.size(); i++) {
+            this.leaderboard.update(i, this.players.getNumberOfChips(i));
+        }
+
+        this.saveRound();
+    }
+
+    /**
+     * Starts saving the new game so that it can be continued if the application crashes.
+     */
+    private void startSavingGame() {
+        try {
+            this.session.start(this.ledger);
+        } catch (IOException e) {
+            this.stopSavingGame();
+        }
+    }
+
+    /**
+     * Saves the last committed round so that the game can be continued if the application crashes.
+     */
+    private void saveRound() {
+        if (this.session == null) {
+            return;
+        }
+
+        try {
+            this.session.commitRound(this.ledger);
+        } catch (IOException e) {
+            this.stopSavingGame();
+        }
+    }
+
+    /**
+     * Gives up on saving the game after a failure, which is only reported once.
+     */
+    private void stopSavingGame() {
+        // The game can still be played to the end, it just cannot be continued after a crash.
+        UI.outputError("Spelet kunde inte sparas!");
+
+        try {
+            this.session.close();
+        } catch (IOException e) {
+            // The journal is not used anymore either way.
+        }
+
+        this.session = null;
+    }
+
+    /**
+     * Continues the saved game if there is one and the user wants to.
+     *
+     * @return Whether or not a saved game is continued
+     */
+    private boolean continueSavedGame() {
+        if (!this.session.hasSession()) {
+            return false;
+        }
+
+        ChipLedger savedLedger;
+
+        try {
+            savedLedger = this.session.resume();
+        } catch (IOException e) {
+            UI.outputError("Det sparade spelet kunde inte läsas!");
+            return false;
+        }
+
+        int action = 0;
+
+        while (action != 1 && action != 2) {
+            action = this.askQuestionAndExpectAnInteger("Det finns ett sparat spel med " + savedLedger.getNumberOfRounds()
+                    + " spelade rundor. Skriv 1 för att fortsätta det eller 2 för att börja ett nytt spel");
+        }
+
+        if (action == 2) {
+            return false;
+        }
+
+        this.ledger = savedLedger;
+        this.players = savedLedger.getPlayers();
+
+        return true;
+    }
+
+    /**
+     * Outputs the standings after an earlier round, which the user is asked for.
+     */
+    private void outputEarlierRound() {
+        int roundNumber = this.askQuestionAndExpectAnInteger("Ange rundans nummer (0-" + this.ledger.getNumberOfRounds() + ")");
+
+        if (roundNumber < 0 || roundNumber > this.ledger.getNumberOfRounds()) {
+            UI.outputError("Rundan har inte spelats!");
+            return;
+        }
+
+        int[] standings = this.ledger.getStandingsAfterRound(roundNumber);
+        int lastRoundNumber = this.ledger.getNumberOfRounds();
+
+        UI.outputHeading("Ställningen efter runda " + roundNumber + ":");
+
+        for (int i = 0; i < this.players.size(); i++) {
+            UI.outputLine(this.players.getName(i) + " representerande " + this.players.getClub(i) + " hade " + standings[i]
+                    + " spelmärken, " + String.format("%+d", this.ledger.getChipDifference(i, roundNumber, lastRoundNumber)) + " sedan dess.");
+        }
+
+        UI.outputDivider();
     }
 
     /**
@@ -217,9 +336,42 @@ class App {
 
         UI.outputHeading("Mellanrapport för runda " + roundNumber + ":");
         this.outputPlayers(this.players);
+        this.outputBiggestSwings();
         UI.outputDivider();
     }
 
+    /**
+     * Outputs the biggest swing of every player who has won or lost anything so far.
+     */
+    private void outputBiggestSwings() {
+        boolean hasOutputTitle = false;
+
+        for (int i = 0; i < this.players.size(); i++) {
+            if (this.ledger.getBiggestSwing(i) == 0) {
+                continue;
+            }
+
+            if (!hasOutputTitle) {
+                UI.outputLine("Största svängningar:");
+                hasOutputTitle = true;
+            }
+
+            UI.outputLine(this.players.getName(i) + " representerande " + this.players.getClub(i) + " fick "
+                    + String.format("%+d", this.ledger.getBiggestSwing(i)) + " spelmärken i runda " + this.ledger.getRoundOfBiggestSwing(i) + ".");
+        }
+    }
+
+    /**
+     * Outputs the details for all the players in the given table.
+     *
+     * @param players The players to output
+     */
+    private void outputPlayers(PlayerTable players) {
+        for (int i = 0; i < players.size(); i++) {
+            UI.outputLine(players.getName(i) + " representerande " + players.getClub(i) + " har " + players.getNumberOfChips(i) + " spelmärken.");
+        }
+    }
+
     /**
      * Outputs the details for the given players.
      *
@@ -244,12 +396,7 @@ class App {
         // g) 4p. Sortera listan och skriv ut de tre första i ordning med en ”medalj” tilldelad. Observera att en medalj
         // kan delas (två kan vinna guld i vilket fall ingen får silver).
 
-        Player[] players = Utils.clonePlayers(this.players);
-
-        // Sort the players so that the one with the most chips is placed first (see Player::compareTo).
-        Arrays.sort(players);
-
-        Player[] topThreePlayers = Logic.dealMedals(players);
+        Player[] topThreePlayers = Logic.dealMedals(this.getPlayersAtPositions(this.leaderboard, this.players, 1, 3));
 
         UI.outputHeading("Medaljutdelning");
 
@@ -258,21 +405,308 @@ class App {
         }
     }
 
+    /**
+     * Replays the results of the given round from a results file, checking them the same way as results entered by the
+     * user. A round with any invalid result is not committed, and every problem found is added to the violations.
+     *
+     * @param file        The results file
+     * @param roundNumber The round number
+     * @param violations  The violations found so far
+     */
+    private void replayRound(ResultsFile file, int roundNumber, List<String> violations) {
+        String line = "Rad " + file.getLineNumber(roundNumber) + " (runda " + roundNumber + "): ";
+        boolean isRoundValid = true;
+        int[] results = this.ledger.getPendingResults();
+        Player player;
+
+        file.copyResults(roundNumber, results);
+
+        if (!Logic.checkThatPlayersHaveEnoughChipsAfterApplyingResults(roundNumber, this.config.numberOfRounds, this.players.getNumberOfChips(), results, results.length)) {
+            // Go through the players one by one only to find out which results were not possible.
+            for (int i = 0; i < results.length; i++) {
+                player = this.players.getPlayer(i);
+
+                if (!Logic.checkThatPlayerHasEnoughChipsAfterApplyingResult(roundNumber, this.config.numberOfRounds, player, results[i])) {
+                    violations.add(line + "Resultatet " + results[i] + " för " + player.getName() + " representerande " + player.getClub() + " är inte möjligt");
+                }
+            }
+
+            isRoundValid = false;
+        }
+
+        if (!Logic.checkThatResultsAddUpToZero(results)) {
+            violations.add(line + "Spelarnas resultat stämmer inte ihop med det totala antalet spelmärken");
+            isRoundValid = false;
+        }
+
+        if (!isRoundValid) {
+            this.ledger.rollbackRound();
+            return;
+        }
+
+        this.ledger.commitRound();
+
+        for (int i = 0; i < results.length; i++) {
+            this.leaderboard.update(i, this.players.getNumberOfChips(i));
+        }
+    }
+
+    /**
+     * Replays the games in the given results files without asking the user anything. Every file is checked in a single
+     * pass, so that all its problems are reported at once, and the result of the game is output if there were none.
+     *
+     * @param paths The paths of the results files
+     */
+    void runBatch(List<String> paths) {
+        ResultsFile file;
+        List<String> violations;
+
+        for (String path : paths) {
+            UI.outputHeading("Spelar upp resultaten i: " + path);
+
+            try {
+                file = ResultsFile.read(Paths.get(path));
+            } catch (IOException e) {
+                UI.outputError("Filen kunde inte läsas!");
+                continue;
+            }
+
+            violations = new ArrayList<>(file.getErrors());
+
+            if (file.getNumberOfPlayers() > 0) {
+                this.players = file.createPlayers(this.dealChips(file.getNumberOfPlayers()));
+                this.ledger = new ChipLedger(this.players);
+                this.leaderboard = new Leaderboard(this.players);
+
+                if (file.getNumberOfRounds() != this.config.numberOfRounds) {
+                    violations.add("Filen innehåller " + file.getNumberOfRounds() + " rundor istället för " + this.config.numberOfRounds);
+                }
+
+                for (int roundNumber = 1; roundNumber <= file.getNumberOfRounds(); roundNumber++) {
+                    // A round that could not be read is already among the errors, and is skipped like an invalid round.
+                    if (file.isRoundReadable(roundNumber)) {
+                        this.replayRound(file, roundNumber, violations);
+                    }
+                }
+
+                if (!Logic.checkTotalNumberOfChipsForPlayers(this.players, this.config.totalNumberOfChips)) {
+                    violations.add("Spelarna har inte totalt " + this.config.totalNumberOfChips + " spelmärken");
+                }
+            }
+
+            if (violations.isEmpty()) {
+                this.outputResult();
+            } else {
+                UI.outputHeading("Filen innehåller " + violations.size() + " fel:");
+
+                for (String violation : violations) {
+                    UI.outputError(violation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays the games in the given results files at the same time, each at a table of its own in a tournament, and
+     * outputs the standings of the clubs and the best players of the whole tournament.
+     *
+     * @param paths The paths of the results files, one per table
+     */
+    void runTournament(List<String> paths) {
+        Tournament tournament = new Tournament(this.config.numberOfTournamentThreads);
+        List<ResultsFile> files = new ArrayList<>();
+        List<Table> tables = new ArrayList<>();
+        ResultsFile file;
+        Config tableConfig;
+        int numberOfRounds = 0;
+
+        for (String path : paths) {
+            try {
+                file = ResultsFile.read(Paths.get(path));
+            } catch (IOException e) {
+                UI.outputError("Filen kunde inte läsas: " + path);
+                continue;
+            }
+
+            // The standings of a table whose file has errors would not match the archived game, so such a file is left
+            // out of the tournament altogether.
+            if (!file.getErrors().isEmpty()) {
+                for (String error : file.getErrors()) {
+                    UI.outputError(path + ": " + error);
+                }
+
+                UI.outputError(path + ": Filen innehåller fel och spelas inte i turneringen");
+                continue;
+            }
+
+            tableConfig = new Config();
+            tableConfig.numberOfPlayers = file.getNumberOfPlayers();
+            tableConfig.numberOfRounds = this.config.numberOfRounds;
+            tableConfig.totalNumberOfChips = this.config.totalNumberOfChips;
+
+            files.add(file);
+            tables.add(tournament.addTable(tableConfig, file.createPlayers(this.dealChips(file.getNumberOfPlayers()))));
+            numberOfRounds = Math.max(numberOfRounds, file.getNumberOfRounds());
+        }
+
+        UI.outputHeading("Turnering med " + tables.size() + " bord");
+
+        // Submit the rounds the way they would arrive during a tournament, one round from every table at a time.
+        for (int roundNumber = 1; roundNumber <= numberOfRounds; roundNumber++) {
+            for (int i = 0; i < files.size(); i++) {
+                file = files.get(i);
+
+                if (roundNumber <= file.getNumberOfRounds()) {
+                    int[] results = new int[file.getNumberOfPlayers()];
+                    file.copyResults(roundNumber, results);
+                    tables.get(i).submitRound(results);
+                }
+            }
+        }
+
+        try {
+            if (!tournament.finish(1, TimeUnit.HOURS)) {
+                UI.outputError("Alla rundor hann inte spelas!");
+            }
+        } catch (InterruptedException e) {
+            UI.outputError("Turneringen avbröts!");
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (Table table : tournament.getTables()) {
+            for (String rejection : table.getRejections()) {
+                UI.outputError(rejection);
+            }
+        }
+
+        this.outputTournamentStandings(tournament);
+    }
+
+    /**
+     * Outputs the standings of the clubs and the best players of the given tournament.
+     *
+     * @param tournament The tournament
+     */
+    private void outputTournamentStandings(Tournament tournament) {
+        UI.outputHeading("Ställningen per klubb");
+
+        for (Map.Entry<String, Long> club : tournament.getClubStandings()) {
+            UI.outputLine(club.getKey() + " har " + club.getValue() + " spelmärken.");
+        }
+
+        PlayerTable allPlayers = new PlayerTable(tournament.getTables().size() * this.config.numberOfPlayers);
+
+        for (Table table : tournament.getTables()) {
+            int[] standings = table.getStandings();
+
+            for (int i = 0; i < standings.length; i++) {
+                allPlayers.add(table.getPlayerName(i), table.getPlayerClub(i) + " (bord " + table.getNumber() + ")", standings[i]);
+            }
+        }
+
+        UI.outputHeading("De bästa spelarna i turneringen");
+        this.outputPlayers(this.getPlayersAtPositions(new Leaderboard(allPlayers), allPlayers, 1, this.config.numberOfTopPlayersInTournament));
+    }
+
+    /**
+     * Returns the players at the given positions on the given leaderboard.
+     *
+     * @param leaderboard  The leaderboard
+     * @param players      The players on the leaderboard
+     * @param fromPosition The first position, starting from 1
+     * @param toPosition   The last position
+     * @return The players, the player with the most chips first
+     */
+    private Player[] getPlayersAtPositions(Leaderboard leaderboard, PlayerTable players, int fromPosition, int toPosition) {
+        int[] playerIndexes = leaderboard.getPlayersAtPositions(fromPosition, toPosition);
+        Player[] playersAtPositions = new Player[playerIndexes.length];
+
+        for (int i = 0; i < playerIndexes.length; i++) {
+            playersAtPositions[i] = players.getPlayer(playerIndexes[i]);
+        }
+
+        return playersAtPositions;
+    }
+
+    /**
+     * Simulates the given number of random games with the configuration of the application and outputs how often the
+     * medals were shared and how the chips were spread at the end. A configuration that no game can be played with is
+     * reported as an error instead.
+     *
+     * @param numberOfGames The number of games to simulate
+     */
+    void runSimulation(long numberOfGames) {
+        if (numberOfGames <= 0) {
+            UI.outputError("Antalet spel måste vara minst 1!");
+            return;
+        }
+
+        if (this.config.numberOfPlayers < 1 || this.config.numberOfRounds < 1) {
+            UI.outputError("Antalet spelare och rundor måste vara minst 1!");
+            return;
+        }
+
+        if (this.config.totalNumberOfChips < this.config.numberOfPlayers) {
+            UI.outputError("Det måste finnas minst ett spelmärke per spelare!");
+            return;
+        }
+
+        UI.outputHeading("Simulerar " + numberOfGames + " spel med " + this.config.numberOfPlayers + " spelare, "
+                + this.config.numberOfRounds + " rundor och " + this.config.totalNumberOfChips + " spelmärken");
+
+        long startTime = System.nanoTime();
+        SimulationStatistics statistics = new TournamentSimulator(this.config, ForkJoinPool.commonPool()).simulate(numberOfGames, this.config.simulationSeed);
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        UI.outputLine("Simulerade spel: " + statistics.getNumberOfGames() + " på " + elapsedMillis + " ms");
+        UI.outputLine("Guldet delades i " + this.formatShare(statistics.getNumberOfSharedGolds(), statistics.getNumberOfGames()) + " av spelen");
+        UI.outputLine("Guldet delades av tre spelare i " + this.formatShare(statistics.getNumberOfGoldsSharedByThree(), statistics.getNumberOfGames()) + " av spelen");
+        UI.outputLine("Silvret delades i " + this.formatShare(statistics.getNumberOfSharedSilvers(), statistics.getNumberOfGames()) + " av spelen");
+        UI.outputLine("Skillnaden mellan flest och minst spelmärken (median, 90 %, 99 %): " + statistics.getSpreadPercentile(50)
+                + ", " + statistics.getSpreadPercentile(90) + ", " + statistics.getSpreadPercentile(99));
+        UI.outputLine("Vinnarens spelmärken (median, 90 %, 99 %): " + statistics.getWinnerPercentile(50)
+                + ", " + statistics.getWinnerPercentile(90) + ", " + statistics.getWinnerPercentile(99));
+
+        if (statistics.getNumberOfInvalidRounds() > 0 || statistics.getNumberOfInvalidGames() > 0) {
+            UI.outputError(statistics.getNumberOfInvalidRounds() + " rundor och " + statistics.getNumberOfInvalidGames() + " spel bröt mot reglerna!");
+        }
+    }
+
+    /**
+     * Formats the given share as a percentage.
+     *
+     * @param count The count
+     * @param total The total
+     * @return The percentage
+     */
+    private String formatShare(long count, long total) {
+        return String.format("%.2f %%", total > 0 ? count * 100.0 / total : 0.0);
+    }
+
     /**
      * Runs the application.
      */
     void run() {
-        int roundNumber = 1;
+        int roundNumber;
         int action;
         boolean isActionValid;
 
-        this.players = this.createPlayers(config.numberOfPlayers);
+        if (!this.continueSavedGame()) {
+            this.players = this.createPlayers(config.numberOfPlayers);
+            this.ledger = new ChipLedger(this.players);
+            this.startSavingGame();
+        }
+
+        this.leaderboard = new Leaderboard(this.players);
+
+        roundNumber = this.ledger.getNumberOfRounds() + 1;
 
         while (roundNumber <= this.config.numberOfRounds) {
             isActionValid = false;
 
             while (!isActionValid) {
-                action = this.askQuestionAndExpectAnInteger("Skriv 1 för att börja nästa runda eller 2 för mellanrapport");
+                action = this.askQuestionAndExpectAnInteger("Skriv 1 för att börja nästa runda, 2 för mellanrapport eller 3 för ställningen efter en tidigare runda");
 
                 switch (action) {
                     case 1:
@@ -286,13 +720,29 @@ class App {
                         isActionValid = true;
                         break;
 
+                    case 3:
+                        this.outputEarlierRound();
+                        isActionValid = true;
+                        break;
+
                     default:
-                        UI.outputError("Du måste skriva antingen 1 eller 2.");
+                        UI.outputError("Du måste skriva 1, 2 eller 3.");
                         break;
                 }
             }
         }
 
         this.outputResult();
+
+        if (this.session == null) {
+            return;
+        }
+
+        try {
+            // The game is over, so there is nothing left to continue.
+            this.session.delete();
+        } catch (IOException e) {
+            UI.outputError("Det sparade spelet kunde inte tas bort!");
+        }
     }
 }
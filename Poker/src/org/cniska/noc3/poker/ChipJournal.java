@@ -0,0 +1,253 @@
+package org.cniska.noc3.poker;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the results of committed rounds.
+ *
+ * Every entry holds the round number and the result of every player as variable-length integers, so a typical round
+ * takes only a few bytes, behind a length and a checksum. An entry that was only partly written when the application
+ * died is noticed by its length or checksum and cut off when the journal is replayed.
+ *
+ * Appending an entry only writes it to the file, and sync makes it durable. Syncing is a group commit: while one thread
+ * forces the file to disk, every other thread that wants to sync waits for it, and is done without forcing the file
+ * again if its entry was written before the force began. Many writers therefore share the cost of each fsync.
+ */
+class ChipJournal implements Closeable {
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int MAXIMUM_VARIABLE_INTEGER_SIZE = 5;
+
+    private final FileChannel channel;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+    private long appendedPosition;
+    private volatile long durablePosition;
+
+    /**
+     * A consumer of the rounds in a journal.
+     */
+    interface RoundConsumer {
+        /**
+         * Accepts a round read from the journal.
+         *
+         * @param roundNumber The round number
+         * @param results     The result of every player, which is only valid during the call
+         */
+        void accept(int roundNumber, int[] results);
+    }
+
+    /**
+     * Opens the journal at the given path for appending, creating it if necessary.
+     *
+     * @param path The path of the journal
+     * @throws IOException If the journal could not be opened
+     */
+    ChipJournal(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.appendedPosition = this.channel.size();
+        this.durablePosition = this.appendedPosition;
+    }
+
+    /**
+     * Appends a round to the journal. The round is not durable until the journal has been synced past the returned
+     * position.
+     *
+     * @param roundNumber     The round number
+     * @param results         The result of every player
+     * @param numberOfPlayers The number of players
+     * @return The position in the journal after the round
+     * @throws IOException If the round could not be written
+     */
+    long append(int roundNumber, int[] results, int numberOfPlayers) throws IOException {
+        synchronized (this.appendLock) {
+            int maximumEntrySize = ENTRY_HEADER_SIZE + (numberOfPlayers + 2) * MAXIMUM_VARIABLE_INTEGER_SIZE;
+
+            if (this.buffer.capacity() < maximumEntrySize) {
+                this.buffer = ByteBuffer.allocate(maximumEntrySize);
+            }
+
+            this.buffer.clear();
+            this.buffer.position(ENTRY_HEADER_SIZE);
+            writeVariableInteger(this.buffer, roundNumber);
+            writeVariableInteger(this.buffer, numberOfPlayers);
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                // Zigzag encoding keeps small negative results as short as small positive ones.
+                writeVariableInteger(this.buffer, (results[i] << 1) ^ (results[i] >> 31));
+            }
+
+            int payloadLength = this.buffer.position() - ENTRY_HEADER_SIZE;
+            this.buffer.putInt(0, payloadLength);
+            this.buffer.putInt(4, checksum(this.buffer.array(), ENTRY_HEADER_SIZE, payloadLength));
+            this.buffer.flip();
+
+            while (this.buffer.hasRemaining()) {
+                this.appendedPosition += this.channel.write(this.buffer, this.appendedPosition);
+            }
+
+            return this.appendedPosition;
+        }
+    }
+
+    /**
+     * Makes sure that everything up to the given position in the journal is on disk.
+     *
+     * @param position The position returned when the last round was appended
+     * @throws IOException If the journal could not be forced to disk
+     */
+    void sync(long position) throws IOException {
+        if (this.durablePosition >= position) {
+            return;
+        }
+
+        synchronized (this.syncLock) {
+            // Another thread may have forced the file while this one was waiting.
+            if (this.durablePosition >= position) {
+                return;
+            }
+
+            long forcedPosition;
+
+            synchronized (this.appendLock) {
+                forcedPosition = this.appendedPosition;
+            }
+
+            this.channel.force(false);
+            this.durablePosition = forcedPosition;
+        }
+    }
+
+    /**
+     * Empties the journal, e.g. once a snapshot contains every round in it.
+     *
+     * @throws IOException If the journal could not be emptied
+     */
+    void clear() throws IOException {
+        synchronized (this.syncLock) {
+            synchronized (this.appendLock) {
+                this.channel.truncate(0);
+                this.channel.force(false);
+                this.appendedPosition = 0;
+                this.durablePosition = 0;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Reads every complete round in the journal at the given path and cuts off anything after the last one, which can
+     * only be a round that was being written when the application died.
+     *
+     * @param path     The path of the journal
+     * @param consumer The consumer of the rounds
+     * @return The number of rounds read
+     * @throws IOException If the journal could not be read
+     */
+    static int replay(Path path, RoundConsumer consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long journalSize = Files.size(path);
+        long validLength = 0;
+        int numberOfRounds = 0;
+        byte[] payload = new byte[256];
+        int[] results = new int[0];
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (validLength + ENTRY_HEADER_SIZE <= journalSize) {
+                int length = input.readInt();
+                int expectedChecksum = input.readInt();
+
+                if (length < 0 || validLength + ENTRY_HEADER_SIZE + length > journalSize) {
+                    break;
+                }
+
+                if (length > payload.length) {
+                    payload = new byte[length];
+                }
+
+                input.readFully(payload, 0, length);
+
+                if (checksum(payload, 0, length) != expectedChecksum) {
+                    break;
+                }
+
+                ByteBuffer entry = ByteBuffer.wrap(payload, 0, length);
+                int roundNumber = readVariableInteger(entry);
+                int numberOfPlayers = readVariableInteger(entry);
+
+                if (results.length != numberOfPlayers) {
+                    results = new int[numberOfPlayers];
+                }
+
+                for (int i = 0; i < numberOfPlayers; i++) {
+                    int value = readVariableInteger(entry);
+                    results[i] = (value >>> 1) ^ -(value & 1);
+                }
+
+                consumer.accept(roundNumber, results);
+                validLength += ENTRY_HEADER_SIZE + length;
+                numberOfRounds++;
+            }
+        } catch (EOFException e) {
+            // The size of the journal is checked before every read, so we should never get here.
+        }
+
+        if (validLength < journalSize) {
+            UI.outputLine("Journalen slutade med en ofullständig runda som togs bort.");
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+        }
+
+        return numberOfRounds;
+    }
+
+    private static void writeVariableInteger(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    private static int readVariableInteger(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,288 @@
+package org.cniska.noc3.poker;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * An append-only ledger of the results of every round in a game of Poker.
+ *
+ * The number of chips each player has after each round is stored as an int in one flat array, round after round, i.e.
+ * as prefix sums of the results. The standings after any round, the difference between any two rounds and the result
+ * of any round are therefore looked up directly instead of replaying the rounds in between. The standings after a
+ * round are only appended once the whole round has been entered and committed. A round that turns out to be invalid
+ * is rolled back by simply forgetting the results entered for it, so the players never have to be copied. Committing
+ * a round adds its results straight to the number of chips in the player table.
+ *
+ * The biggest swing of every player, i.e. the result furthest from zero in a single round, is kept up to date as the
+ * rounds are committed.
+ */
+class ChipLedger {
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private final PlayerTable players;
+    private final int numberOfPlayers;
+
+    // The number of chips of every player after round 0, 1, 2, ..., one round after another.
+    private int[] standings;
+    private int numberOfRounds = 0;
+
+    // The result furthest from zero of every player and the round it was in, 0 before any rounds.
+    private final int[] biggestSwings;
+    private final int[] biggestSwingRounds;
+
+    // The results entered for the round that has not been committed yet.
+    private final int[] pendingResults;
+
+    /**
+     * Creates a new ledger for the given players, starting from the number of chips they have now. No players can be
+     * added to the table after this.
+     *
+     * @param players The players in the game
+     */
+    ChipLedger(PlayerTable players) {
+        this.players = players;
+        this.numberOfPlayers = players.size();
+        this.standings = Arrays.copyOf(players.getNumberOfChips(), Math.max(this.numberOfPlayers, 1) * 32);
+        this.pendingResults = new int[this.numberOfPlayers];
+        this.biggestSwings = new int[this.numberOfPlayers];
+        this.biggestSwingRounds = new int[this.numberOfPlayers];
+    }
+
+    /**
+     * Enters the result of the given player for the round that is being entered.
+     *
+     * @param playerIndex The index of the player
+     * @param result      The player's result
+     */
+    void enterResult(int playerIndex, int result) {
+        this.pendingResults[playerIndex] = result;
+    }
+
+    /**
+     * Enters the results of all players for the round that is being entered.
+     *
+     * @param results The results, by player index
+     */
+    void enterResults(int[] results) {
+        System.arraycopy(results, 0, this.pendingResults, 0, this.numberOfPlayers);
+    }
+
+    /**
+     * Returns the results entered for the round that is being entered, by player index.
+     *
+     * @return The results, which must not be modified
+     */
+    int[] getPendingResults() {
+        return this.pendingResults;
+    }
+
+    /**
+     * Appends the results entered for the round to the ledger, all at once.
+     */
+    void commitRound() {
+        int offset = (this.numberOfRounds + 1) * this.numberOfPlayers;
+
+        if (offset + this.numberOfPlayers > this.standings.length) {
+            this.standings = Arrays.copyOf(this.standings, this.standings.length * 2);
+        }
+
+        int[] numberOfChips = this.players.getNumberOfChips();
+        int result;
+
+        this.numberOfRounds++;
+
+        for (int i = 0; i < this.numberOfPlayers; i++) {
+            result = this.pendingResults[i];
+            numberOfChips[i] += result;
+            this.standings[offset + i] = numberOfChips[i];
+
+            if (Math.abs(result) > Math.abs(this.biggestSwings[i])) {
+                this.biggestSwings[i] = result;
+                this.biggestSwingRounds[i] = this.numberOfRounds;
+            }
+        }
+
+        this.rollbackRound();
+    }
+
+    /**
+     * Forgets the results entered for the round, leaving the ledger as it was before the round was entered.
+     */
+    void rollbackRound() {
+        Arrays.fill(this.pendingResults, 0);
+    }
+
+    /**
+     * Returns the result of the given player in the given round.
+     *
+     * @param roundNumber The round number, starting from 1
+     * @param playerIndex The index of the player
+     * @return The player's result
+     */
+    int getResult(int roundNumber, int playerIndex) {
+        return this.getChipDifference(playerIndex, roundNumber - 1, roundNumber);
+    }
+
+    /**
+     * Returns the number of chips the given player had after the given round.
+     *
+     * @param roundNumber The round number, 0 for the number of chips the player started with
+     * @param playerIndex The index of the player
+     * @return The number of chips
+     */
+    int getNumberOfChipsAfterRound(int roundNumber, int playerIndex) {
+        this.checkThatRoundHasBeenPlayed(roundNumber);
+
+        return this.standings[roundNumber * this.numberOfPlayers + playerIndex];
+    }
+
+    /**
+     * Returns how many chips the given player won, or lost if negative, from after one round to after another.
+     *
+     * @param playerIndex     The index of the player
+     * @param fromRoundNumber The earlier round number, 0 for the start of the game
+     * @param toRoundNumber   The later round number
+     * @return The difference in the number of chips
+     */
+    int getChipDifference(int playerIndex, int fromRoundNumber, int toRoundNumber) {
+        return this.getNumberOfChipsAfterRound(toRoundNumber, playerIndex) - this.getNumberOfChipsAfterRound(fromRoundNumber, playerIndex);
+    }
+
+    /**
+     * Returns the number of chips every player had after the given round.
+     *
+     * @param roundNumber The round number, 0 for the number of chips the players started with
+     * @return The number of chips, by player index
+     */
+    int[] getStandingsAfterRound(int roundNumber) {
+        this.checkThatRoundHasBeenPlayed(roundNumber);
+
+        return Arrays.copyOfRange(this.standings, roundNumber * this.numberOfPlayers, (roundNumber + 1) * this.numberOfPlayers);
+    }
+
+    /**
+     * Returns the biggest swing of the given player, i.e. the result furthest from zero in a single round. Of results
+     * equally far from zero, the earliest one is the biggest swing.
+     *
+     * @param playerIndex The index of the player
+     * @return The result, 0 if no rounds have been committed
+     */
+    int getBiggestSwing(int playerIndex) {
+        return this.biggestSwings[playerIndex];
+    }
+
+    /**
+     * Returns the round of the biggest swing of the given player.
+     *
+     * @param playerIndex The index of the player
+     * @return The round number, 0 if the player has not won or lost anything yet
+     */
+    int getRoundOfBiggestSwing(int playerIndex) {
+        return this.biggestSwingRounds[playerIndex];
+    }
+
+    /**
+     * Returns the number of committed rounds.
+     *
+     * @return The number of rounds
+     */
+    int getNumberOfRounds() {
+        return this.numberOfRounds;
+    }
+
+    /**
+     * Returns the players of the game, with the number of chips they have after all committed rounds.
+     *
+     * @return The players
+     */
+    PlayerTable getPlayers() {
+        return this.players;
+    }
+
+    /**
+     * Writes the ledger to the given file. The new ledger is forced to disk before the file is replaced atomically, so
+     * the file always contains either the previous or the new ledger even if the application crashes while writing it.
+     *
+     * @param path The path of the file
+     * @throws IOException If the file could not be written
+     */
+    void saveToFile(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        try (FileOutputStream file = new FileOutputStream(temporaryPath.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeInt(FILE_FORMAT_VERSION);
+            output.writeInt(this.numberOfPlayers);
+
+            for (int i = 0; i < this.numberOfPlayers; i++) {
+                output.writeUTF(this.players.getName(i));
+                output.writeUTF(this.players.getClub(i));
+                output.writeInt(this.standings[i]);
+            }
+
+            output.writeInt(this.numberOfRounds);
+
+            // The results are written rather than the standings, as they are what the ledger is read from.
+            for (int i = this.numberOfPlayers; i < (this.numberOfRounds + 1) * this.numberOfPlayers; i++) {
+                output.writeInt(this.standings[i] - this.standings[i - this.numberOfPlayers]);
+            }
+
+            output.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a ledger that was written to the given file, replaying all its rounds.
+     *
+     * @param path The path of the file
+     * @return The ledger
+     * @throws IOException If the file could not be read or is not a ledger
+     */
+    static ChipLedger readFromFile(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("Unknown ledger format: " + path);
+            }
+
+            int numberOfPlayers = input.readInt();
+            PlayerTable players = new PlayerTable(numberOfPlayers);
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                players.add(input.readUTF(), input.readUTF(), input.readInt());
+            }
+
+            ChipLedger ledger = new ChipLedger(players);
+
+            for (int numberOfRounds = input.readInt(); numberOfRounds > 0; numberOfRounds--) {
+                for (int i = 0; i < numberOfPlayers; i++) {
+                    ledger.enterResult(i, input.readInt());
+                }
+
+                ledger.commitRound();
+            }
+
+            return ledger;
+        }
+    }
+
+    /**
+     * Makes sure that the given round has been committed.
+     *
+     * @param roundNumber The round number
+     */
+    private void checkThatRoundHasBeenPlayed(int roundNumber) {
+        if (roundNumber < 0 || roundNumber > this.numberOfRounds) {
+            throw new IllegalArgumentException("Round " + roundNumber + " has not been played");
+        }
+    }
+}
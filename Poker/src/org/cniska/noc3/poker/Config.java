@@ -8,4 +8,9 @@ class Config {
     int numberOfPlayers = 5;
     int numberOfRounds = 20;
     int totalNumberOfChips = 500;
+    int numberOfTournamentThreads = Runtime.getRuntime().availableProcessors();
+    int numberOfTopPlayersInTournament = 10;
+    long simulationSeed = 1;
+    String sessionDirectoryPath = System.getProperty("user.home") + "/.noc3/poker-session";
+    int numberOfRoundsBetweenSessionSnapshots = 5;
 }
@@ -0,0 +1,372 @@
+package org.cniska.noc3.poker;
+
+import java.util.SplittableRandom;
+
+/**
+ * Keeps the players of a game in order by their number of chips, the player with the most chips first, while their
+ * number of chips changes.
+ *
+ * The players are kept in a treap, a binary search tree balanced by random priorities, where every node also knows
+ * the size of its subtree. Updating a player, finding the rank of a player and finding the player at a position all
+ * take O(log n) time, so the standings never have to be sorted again. The nodes are stored in arrays indexed by the
+ * player index, so the tree allocates nothing after it has been created.
+ *
+ * Players with the same number of chips are ordered by their index, the same way a stable sort of the players would
+ * order them, but share the same rank.
+ */
+class Leaderboard {
+    private static final int NONE = -1;
+
+    private final int[] numberOfChips;
+    private final int[] priorities;
+    private final int[] left;
+    private final int[] right;
+    private final int[] sizes;
+    private final boolean[] isInTree;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private int root = NONE;
+
+    // The result of the latest split, the nodes before and from the pivot.
+    private int splitBefore;
+    private int splitFrom;
+
+    /**
+     * Creates an empty leaderboard.
+     *
+     * @param numberOfPlayers The number of players that can be on the leaderboard
+     */
+    Leaderboard(int numberOfPlayers) {
+        this.numberOfChips = new int[numberOfPlayers];
+        this.priorities = new int[numberOfPlayers];
+        this.left = new int[numberOfPlayers];
+        this.right = new int[numberOfPlayers];
+        this.sizes = new int[numberOfPlayers];
+        this.isInTree = new boolean[numberOfPlayers];
+    }
+
+    /**
+     * Creates a leaderboard of the given players.
+     *
+     * @param players The players
+     */
+    Leaderboard(PlayerTable players) {
+        this(players.size());
+
+        for (int i = 0; i < players.size(); i++) {
+            this.update(i, players.getNumberOfChips(i));
+        }
+    }
+
+    /**
+     * Sets the number of chips of the given player, adding the player to the leaderboard if necessary.
+     *
+     * @param playerIndex   The index of the player
+     * @param numberOfChips The number of chips the player has now
+     */
+    void update(int playerIndex, int numberOfChips) {
+        if (this.isInTree[playerIndex]) {
+            if (this.numberOfChips[playerIndex] == numberOfChips) {
+                return;
+            }
+
+            this.root = this.remove(this.root, playerIndex);
+        }
+
+        this.numberOfChips[playerIndex] = numberOfChips;
+        this.priorities[playerIndex] = this.random.nextInt();
+        this.left[playerIndex] = NONE;
+        this.right[playerIndex] = NONE;
+        this.sizes[playerIndex] = 1;
+        this.isInTree[playerIndex] = true;
+        this.root = this.insert(this.root, playerIndex);
+    }
+
+    /**
+     * Returns the number of players on the leaderboard.
+     *
+     * @return The number of players
+     */
+    int size() {
+        return this.size(this.root);
+    }
+
+    /**
+     * Returns the rank of the given player, i.e. one more than the number of players with more chips. Players with the
+     * same number of chips share the same rank.
+     *
+     * @param playerIndex The index of the player
+     * @return The rank, starting from 1
+     */
+    int getRank(int playerIndex) {
+        return this.countPlayersWithMoreChipsThan(this.numberOfChips[playerIndex]) + 1;
+    }
+
+    /**
+     * Returns the position of the given player on the leaderboard. Unlike the rank, no two players share a position.
+     *
+     * @param playerIndex The index of the player
+     * @return The position, starting from 1
+     */
+    int getPosition(int playerIndex) {
+        int position = this.size(this.left[playerIndex]) + 1;
+        int node = this.root;
+
+        while (node != playerIndex) {
+            if (this.isBefore(playerIndex, node)) {
+                node = this.left[node];
+            } else {
+                position += this.size(this.left[node]) + 1;
+                node = this.right[node];
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Returns the player at the given position on the leaderboard.
+     *
+     * @param position The position, starting from 1
+     * @return The index of the player
+     */
+    int getPlayerAt(int position) {
+        int node = this.root;
+        int leftSize;
+
+        while (true) {
+            leftSize = this.size(this.left[node]);
+
+            if (position <= leftSize) {
+                node = this.left[node];
+            } else if (position == leftSize + 1) {
+                return node;
+            } else {
+                position -= leftSize + 1;
+                node = this.right[node];
+            }
+        }
+    }
+
+    /**
+     * Returns the players at the given positions on the leaderboard, e.g. the top ten are at positions 1 to 10.
+     *
+     * @param fromPosition The first position, starting from 1
+     * @param toPosition   The last position, which may be past the last player
+     * @return The indexes of the players, in order
+     */
+    int[] getPlayersAtPositions(int fromPosition, int toPosition) {
+        toPosition = Math.min(toPosition, this.size());
+
+        if (fromPosition > toPosition) {
+            return new int[0];
+        }
+
+        int[] players = new int[toPosition - fromPosition + 1];
+        this.collect(this.root, 0, fromPosition, toPosition, players);
+
+        return players;
+    }
+
+    /**
+     * Returns the players whose rank is between the given ranks. Since players with the same number of chips share a
+     * rank, players that are tied are either all included or all left out.
+     *
+     * @param fromRank The first rank, starting from 1
+     * @param toRank   The last rank
+     * @return The indexes of the players, in order
+     */
+    int[] getPlayersWithRanks(int fromRank, int toRank) {
+        int size = this.size();
+
+        if (fromRank > size || fromRank > toRank) {
+            return new int[0];
+        }
+
+        // The player at a position has that rank, unless the player is tied with the players before it.
+        int firstPlayer = this.getPlayerAt(fromRank);
+        int fromPosition = this.getRank(firstPlayer) == fromRank
+                ? fromRank
+                : this.countPlayersWithMoreChipsThan(this.numberOfChips[firstPlayer] - 1) + 1;
+        int toPosition = this.countPlayersWithMoreChipsThan(this.numberOfChips[this.getPlayerAt(Math.min(toRank, size))] - 1);
+
+        return this.getPlayersAtPositions(fromPosition, toPosition);
+    }
+
+    /**
+     * Counts the players that have more than the given number of chips.
+     *
+     * @param numberOfChips The number of chips
+     * @return The number of players
+     */
+    private int countPlayersWithMoreChipsThan(int numberOfChips) {
+        int count = 0;
+        int node = this.root;
+
+        while (node != NONE) {
+            if (this.numberOfChips[node] > numberOfChips) {
+                count += this.size(this.left[node]) + 1;
+                node = this.right[node];
+            } else {
+                node = this.left[node];
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Collects the players at the given positions in the given subtree, skipping the subtrees outside them.
+     *
+     * @param node         The root of the subtree
+     * @param offset       The number of players before the subtree
+     * @param fromPosition The first position
+     * @param toPosition   The last position
+     * @param players      The players collected so far
+     */
+    private void collect(int node, int offset, int fromPosition, int toPosition, int[] players) {
+        if (node == NONE || offset >= toPosition || offset + this.sizes[node] < fromPosition) {
+            return;
+        }
+
+        int position = offset + this.size(this.left[node]) + 1;
+
+        this.collect(this.left[node], offset, fromPosition, toPosition, players);
+
+        if (position >= fromPosition && position <= toPosition) {
+            players[position - fromPosition] = node;
+        }
+
+        this.collect(this.right[node], position, fromPosition, toPosition, players);
+    }
+
+    /**
+     * Inserts the given node into the given subtree.
+     *
+     * @param node    The root of the subtree
+     * @param newNode The node to insert
+     * @return The new root of the subtree
+     */
+    private int insert(int node, int newNode) {
+        if (node == NONE) {
+            return newNode;
+        }
+
+        if (this.priorities[newNode] > this.priorities[node]) {
+            this.split(node, newNode);
+            this.left[newNode] = this.splitBefore;
+            this.right[newNode] = this.splitFrom;
+            this.updateSize(newNode);
+            return newNode;
+        }
+
+        if (this.isBefore(newNode, node)) {
+            this.left[node] = this.insert(this.left[node], newNode);
+        } else {
+            this.right[node] = this.insert(this.right[node], newNode);
+        }
+
+        this.updateSize(node);
+
+        return node;
+    }
+
+    /**
+     * Removes the given node from the given subtree, which must contain it.
+     *
+     * @param node        The root of the subtree
+     * @param removedNode The node to remove
+     * @return The new root of the subtree
+     */
+    private int remove(int node, int removedNode) {
+        if (node == removedNode) {
+            this.isInTree[node] = false;
+            return this.merge(this.left[node], this.right[node]);
+        }
+
+        if (this.isBefore(removedNode, node)) {
+            this.left[node] = this.remove(this.left[node], removedNode);
+        } else {
+            this.right[node] = this.remove(this.right[node], removedNode);
+        }
+
+        this.updateSize(node);
+
+        return node;
+    }
+
+    /**
+     * Splits the given subtree into the nodes before the pivot and the nodes from it on.
+     *
+     * @param node  The root of the subtree
+     * @param pivot The node to split at
+     */
+    private void split(int node, int pivot) {
+        if (node == NONE) {
+            this.splitBefore = NONE;
+            this.splitFrom = NONE;
+            return;
+        }
+
+        if (this.isBefore(node, pivot)) {
+            this.split(this.right[node], pivot);
+            this.right[node] = this.splitBefore;
+            this.splitBefore = node;
+        } else {
+            this.split(this.left[node], pivot);
+            this.left[node] = this.splitFrom;
+            this.splitFrom = node;
+        }
+
+        this.updateSize(node);
+    }
+
+    /**
+     * Merges two subtrees where every node in the first comes before every node in the second.
+     *
+     * @param first  The root of the first subtree
+     * @param second The root of the second subtree
+     * @return The root of the merged tree
+     */
+    private int merge(int first, int second) {
+        if (first == NONE) {
+            return second;
+        }
+
+        if (second == NONE) {
+            return first;
+        }
+
+        if (this.priorities[first] > this.priorities[second]) {
+            this.right[first] = this.merge(this.right[first], second);
+            this.updateSize(first);
+            return first;
+        }
+
+        this.left[second] = this.merge(first, this.left[second]);
+        this.updateSize(second);
+
+        return second;
+    }
+
+    /**
+     * Returns whether the first player comes before the second, i.e. has more chips or the same number of chips and a
+     * lower index.
+     *
+     * @param player      The index of the first player
+     * @param otherPlayer The index of the second player
+     * @return The result
+     */
+    private boolean isBefore(int player, int otherPlayer) {
+        return this.numberOfChips[player] != this.numberOfChips[otherPlayer]
+                ? this.numberOfChips[player] > this.numberOfChips[otherPlayer]
+                : player < otherPlayer;
+    }
+
+    private void updateSize(int node) {
+        this.sizes[node] = this.size(this.left[node]) + this.size(this.right[node]) + 1;
+    }
+
+    private int size(int node) {
+        return node != NONE ? this.sizes[node] : 0;
+    }
+}
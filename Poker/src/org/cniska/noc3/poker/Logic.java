@@ -8,23 +8,24 @@ import java.util.Arrays;
 class Logic {
 
     /**
-     * Calculates the maximum amount of chips that be assigned to a player.
+     * Calculates the amount of chips that should be assigned to the given player.
      *
-     * @param numberOfChipsDealt             The number of chips dealt so far
-     * @param numberOfLeftOverChipsPerPlayer The number of chips (potentially) left over for each player
-     * @param numberOfChipsPerPlayer         The minimum amount of chips available for each player
-     * @param totalNumberOfChips             The total amount of chips in the game
+     * @param playerIndex        The index of the player
+     * @param numberOfPlayers    The number of players in the game
+     * @param totalNumberOfChips The total amount of chips in the game
      * @return The number of chips.
      */
-    static int calculateNumberOfPlayerChips(int numberOfChipsDealt, int numberOfLeftOverChipsPerPlayer, int numberOfChipsPerPlayer, int totalNumberOfChips) {
-        int maximumNumberOfChipsPerPlayer = numberOfChipsPerPlayer + numberOfLeftOverChipsPerPlayer;
+    static int calculateNumberOfPlayerChips(int playerIndex, int numberOfPlayers, int totalNumberOfChips) {
+        int numberOfChipsPerPlayer = totalNumberOfChips / numberOfPlayers;
+        int numberOfLeftOverChips = totalNumberOfChips % numberOfPlayers;
 
         // NOTE:
         // This is a bit overkill, but here we ensure that the chips are evenly distributed amongst the players
         // (instead of just assuming that the total number of chips is evenly dividable by the number of players).
+        // The chips left over are dealt one each to the first players.
         // e.g. Wrong: 500 / 3 = 166, 166 x 3 = 498; Correct: 167, 167, 166 = 500
-        return (numberOfChipsDealt + maximumNumberOfChipsPerPlayer) <= totalNumberOfChips
-                ? maximumNumberOfChipsPerPlayer
+        return playerIndex < numberOfLeftOverChips
+                ? numberOfChipsPerPlayer + 1
                 : numberOfChipsPerPlayer;
     }
 
@@ -35,19 +36,36 @@ class Logic {
      * @param totalNumberOfChips The total number of chips available
      * @return Whether or not the total amount of chips the players have is correct
      */
-    static boolean checkTotalNumberOfChipsForPlayers(Player[] players, int totalNumberOfChips) {
+    static boolean checkTotalNumberOfChipsForPlayers(PlayerTable players, int totalNumberOfChips) {
         // d) 4p. Kontrollerar att summan av resultaten för en runda är 0, alltså att lika mycket förlorades som de(n)
         // som vann och att summa för allas märken alltid är 500. Flera än en spelare kan vinna en runda.
 
-        int totalNumberOfChipsForPlayers = 0;
+        int[] numberOfChips = players.getNumberOfChips();
+        long totalNumberOfChipsForPlayers = 0;
 
-        for (Player player : players) {
-            totalNumberOfChipsForPlayers += player.getNumberOfChips();
+        for (int i = 0; i < players.size(); i++) {
+            totalNumberOfChipsForPlayers += numberOfChips[i];
         }
 
         return totalNumberOfChipsForPlayers == totalNumberOfChips;
     }
 
+    /**
+     * Checks that the results of a round add up to zero, i.e. that as many chips were lost as were won.
+     *
+     * @param results The results of all players in the round
+     * @return Whether or not the results add up to zero
+     */
+    static boolean checkThatResultsAddUpToZero(int[] results) {
+        long sumOfResults = 0;
+
+        for (int result : results) {
+            sumOfResults += result;
+        }
+
+        return sumOfResults == 0;
+    }
+
     /**
      * Checks that the given player has enough chips left for blinds after applying the given result.
      *
@@ -64,14 +82,36 @@ class Logic {
         return numberOfChipsAfterApplyingResult >= numberOfChipsRequiredForBlinds;
     }
 
+    /**
+     * Checks that all players have enough chips left for blinds after applying the given results. This is the same
+     * check as checkThatPlayerHasEnoughChipsAfterApplyingResult for every player, in one loop without branches.
+     *
+     * @param roundNumber     The round number
+     * @param numberOfRounds  The number of rounds in the game
+     * @param numberOfChips   The number of chips of every player
+     * @param results         The result of every player
+     * @param numberOfPlayers The number of players
+     * @return Whether or not all results are possible
+     */
+    static boolean checkThatPlayersHaveEnoughChipsAfterApplyingResults(int roundNumber, int numberOfRounds, int[] numberOfChips, int[] results, int numberOfPlayers) {
+        int numberOfChipsRequiredForBlinds = numberOfRounds - roundNumber;
+        int minimumNumberOfChipsAfterApplyingResults = Integer.MAX_VALUE;
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            minimumNumberOfChipsAfterApplyingResults = Math.min(minimumNumberOfChipsAfterApplyingResults, numberOfChips[i] + results[i]);
+        }
+
+        return minimumNumberOfChipsAfterApplyingResults >= numberOfChipsRequiredForBlinds;
+    }
+
     /**
      * Deals the medals for the given players.
      *
-     * @param players The players to whom deal the medals
+     * @param players The players to whom deal the medals, the player with the most chips first
      * @return The players who received a medal
      */
     static Player[] dealMedals(Player[] players) {
-        Player[] topThreePlayers = Arrays.copyOfRange(players, 0, 3);
+        Player[] topThreePlayers = Arrays.copyOfRange(players, 0, Math.min(3, players.length));
         String[] medals = {"Guld", "Silver", "Brons"};
         Player player, nextPlayer;
         int currentMedalIndex = 0;
@@ -1,11 +1,32 @@
 package org.cniska.noc3.poker;
 
+import java.util.Arrays;
+
 public class Main {
 
     public static void main(String[] args) {
         Config config = new Config();
         App app = new App(config);
 
-        app.run();
+        // Pass --batch followed by results files to replay archived games instead of entering the results by hand, or
+        // --tournament followed by results files to play them all at the same time as the tables of a tournament, or
+        // --simulate followed by a number of games to see what the outcomes of random games look like.
+        if (args.length > 1 && args[0].equals("--batch")) {
+            app.runBatch(Arrays.asList(args).subList(1, args.length));
+        } else if (args.length > 1 && args[0].equals("--tournament")) {
+            app.runTournament(Arrays.asList(args).subList(1, args.length));
+        } else if (args.length > 1 && args[0].equals("--simulate")) {
+            // The number of players, rounds and chips can follow the number of games to simulate other configurations.
+            try {
+                config.numberOfPlayers = args.length > 2 ? Integer.parseInt(args[2]) : config.numberOfPlayers;
+                config.numberOfRounds = args.length > 3 ? Integer.parseInt(args[3]) : config.numberOfRounds;
+                config.totalNumberOfChips = args.length > 4 ? Integer.parseInt(args[4]) : config.totalNumberOfChips;
+                app.runSimulation(Long.parseLong(args[1]));
+            } catch (NumberFormatException exception) {
+                UI.outputError("Antalet spel, spelare, rundor och spelmärken måste vara heltal!");
+            }
+        } else {
+            app.run();
+        }
     }
 }
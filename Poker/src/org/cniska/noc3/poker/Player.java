@@ -1,37 +1,27 @@
 package org.cniska.noc3.poker;
 
 /**
- * Represents a single player in a game of Poker.
+ * Represents a single player in a game of Poker, as a view of the player's row in a player table.
  */
-class Player implements Comparable<Player>, Cloneable {
+class Player implements Comparable<Player> {
 
-    private String name;
-    private String club;
-    private int numberOfChips;
-    private String medal;
+    private final PlayerTable table;
+    private final int index;
 
     /**
-     * Creates a new player.
+     * Creates a view of a player.
      *
-     * @param name The player name
-     * @param club The club the player belongs to
-     * @param numberOfChips The number of chips the player has
+     * @param table The table the player is in
+     * @param index The index of the player in the table
      */
-    Player(String name, String club, int numberOfChips) {
-        this.setName(name);
-        this.setClub(club);
-        this.setNumberOfChips(numberOfChips);
-        this.setMedal(null);
+    Player(PlayerTable table, int index) {
+        this.table = table;
+        this.index = index;
     }
 
     @Override
     public int compareTo(Player other) {
-        return other.numberOfChips - this.numberOfChips;
-    }
-
-    @Override
-    protected Player clone() throws CloneNotSupportedException {
-        return new Player(this.getName(), this.getClub(), this.getNumberOfChips());
+        return other.getNumberOfChips() - this.getNumberOfChips();
     }
 
     /**
@@ -44,44 +34,23 @@ class Player implements Comparable<Player>, Cloneable {
         return this.getNumberOfChips() > other.getNumberOfChips();
     }
 
-    /**
-     * Applies the given result by adding it to the number of chips this player has.
-     *
-     * @param result The result to add
-     */
-    void applyResult(int result) {
-        this.numberOfChips += result;
-    }
-
     int getNumberOfChips() {
-        return numberOfChips;
-    }
-
-    private void setNumberOfChips(int numberOfChips) {
-        this.numberOfChips = numberOfChips;
+        return table.getNumberOfChips(index);
     }
 
     String getMedal() {
-        return medal;
+        return table.getMedal(index);
     }
 
     void setMedal(String medal) {
-        this.medal = medal;
+        table.setMedal(index, medal);
     }
 
     String getName() {
-        return name;
-    }
-
-    private void setName(String name) {
-        this.name = name.trim();
+        return table.getName(index);
     }
 
     String getClub() {
-        return club;
-    }
-
-    private void setClub(String club) {
-        this.club = club.trim();
+        return table.getClub(index);
     }
 }
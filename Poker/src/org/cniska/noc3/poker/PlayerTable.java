@@ -0,0 +1,149 @@
+package org.cniska.noc3.poker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The players in a game of Poker, stored column by column instead of as one object per player.
+ *
+ * The number of chips of every player is kept in a single int array and the club of every player as an id into a list
+ * of the clubs, where every club occurs only once. Checking the results of a round or summing the chips of all players
+ * is then a simple loop over an int array, which stays fast even with hundreds of thousands of players. A Player is
+ * only a view of a row in the table.
+ */
+class PlayerTable {
+    private String[] names;
+    private int[] clubIds;
+    private int[] numberOfChips;
+    private String[] medals;
+    private int size = 0;
+
+    private final List<String> clubs = new ArrayList<>();
+    private final Map<String, Integer> clubIdsByName = new HashMap<>();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param capacity The number of players the table has room for before it has to grow
+     */
+    PlayerTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+
+        this.names = new String[capacity];
+        this.clubIds = new int[capacity];
+        this.numberOfChips = new int[capacity];
+    }
+
+    /**
+     * Adds a player to the table.
+     *
+     * @param name          The player name
+     * @param club          The club the player belongs to
+     * @param numberOfChips The number of chips the player has
+     * @return The index of the player
+     */
+    int add(String name, String club, int numberOfChips) {
+        if (this.size == this.names.length) {
+            int capacity = this.size * 2;
+
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.clubIds = Arrays.copyOf(this.clubIds, capacity);
+            this.numberOfChips = Arrays.copyOf(this.numberOfChips, capacity);
+        }
+
+        club = club.trim();
+
+        Integer clubId = this.clubIdsByName.get(club);
+
+        if (clubId == null) {
+            clubId = this.clubs.size();
+            this.clubs.add(club);
+            this.clubIdsByName.put(club, clubId);
+        }
+
+        this.names[this.size] = name.trim();
+        this.clubIds[this.size] = clubId;
+        this.numberOfChips[this.size] = numberOfChips;
+
+        return this.size++;
+    }
+
+    /**
+     * Returns a view of the given player.
+     *
+     * @param playerIndex The index of the player
+     * @return The player
+     */
+    Player getPlayer(int playerIndex) {
+        return new Player(this, playerIndex);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    String getName(int playerIndex) {
+        return this.names[playerIndex];
+    }
+
+    String getClub(int playerIndex) {
+        return this.clubs.get(this.clubIds[playerIndex]);
+    }
+
+    int getClubId(int playerIndex) {
+        return this.clubIds[playerIndex];
+    }
+
+    int getNumberOfClubs() {
+        return this.clubs.size();
+    }
+
+    String getClubName(int clubId) {
+        return this.clubs.get(clubId);
+    }
+
+    int getNumberOfChips(int playerIndex) {
+        return this.numberOfChips[playerIndex];
+    }
+
+    /**
+     * Returns the number of chips of every player, for loops over all the players. Only the first size() elements are
+     * players, and the array is replaced when the table grows.
+     *
+     * @return The number of chips, by player index
+     */
+    int[] getNumberOfChips() {
+        return this.numberOfChips;
+    }
+
+    /**
+     * Returns the total number of chips of the players of every club.
+     *
+     * @return The number of chips, by club id
+     */
+    long[] getNumberOfChipsPerClub() {
+        long[] numberOfChipsPerClub = new long[this.clubs.size()];
+
+        for (int i = 0; i < this.size; i++) {
+            numberOfChipsPerClub[this.clubIds[i]] += this.numberOfChips[i];
+        }
+
+        return numberOfChipsPerClub;
+    }
+
+    String getMedal(int playerIndex) {
+        return this.medals != null ? this.medals[playerIndex] : null;
+    }
+
+    void setMedal(int playerIndex, String medal) {
+        // Only a few players ever get a medal, so there is no room for them until the first one does.
+        if (this.medals == null || this.medals.length < this.names.length) {
+            this.medals = this.medals == null ? new String[this.names.length] : Arrays.copyOf(this.medals, this.names.length);
+        }
+
+        this.medals[playerIndex] = medal;
+    }
+}
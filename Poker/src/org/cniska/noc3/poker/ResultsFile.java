@@ -0,0 +1,209 @@
+package org.cniska.noc3.poker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The results of a whole game of Poker read from a CSV file, e.g. an archived tournament.
+ *
+ * The first line lists the players as name and club separated by a space, the same way they are entered in the
+ * application, and every line after it holds the results of one round in the same order:
+ *
+ * <pre>
+ * Ingvar Infå,Stina KK,Filippa MK,Martin Sigma,Lisa Bio
+ * 5,-3,0,-2,0
+ * </pre>
+ *
+ * Empty lines and lines starting with # are skipped. Every other line is a round, even if it cannot be read, so that
+ * the rounds after it keep the numbers they have in the file. Lines that cannot be read are reported as errors
+ * together with their line number, so that every error in the file is found at once.
+ */
+class ResultsFile {
+    private static final String SEPARATOR = ",";
+
+    private String[] names;
+    private String[] clubs;
+    private int numberOfRounds = 0;
+
+    // The results of every round, round after round, the line every round was read from and whether it could be read.
+    private int[] results = new int[0];
+    private int[] lineNumbers = new int[0];
+    private boolean[] readableRounds = new boolean[0];
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Reads the results from the given file.
+     *
+     * @param path The path of the file
+     * @return The results
+     * @throws IOException If the file could not be read
+     */
+    static ResultsFile read(Path path) throws IOException {
+        ResultsFile file = new ResultsFile();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        int lineNumber = 0;
+
+        for (String line : lines) {
+            lineNumber++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (file.names == null) {
+                file.readPlayers(line, lineNumber);
+            } else {
+                file.readRound(line, lineNumber);
+            }
+        }
+
+        if (file.names == null) {
+            file.errors.add("Filen innehåller inga spelare");
+            file.names = new String[0];
+            file.clubs = new String[0];
+        }
+
+        return file;
+    }
+
+    /**
+     * Reads the players from the first line of the file.
+     *
+     * @param line       The line
+     * @param lineNumber The number of the line
+     */
+    private void readPlayers(String line, int lineNumber) {
+        String[] columns = line.split(SEPARATOR);
+        String[] playerNameAndClub;
+
+        this.names = new String[columns.length];
+        this.clubs = new String[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            playerNameAndClub = columns[i].trim().split(" ");
+
+            if (playerNameAndClub.length == 2) {
+                this.names[i] = playerNameAndClub[0];
+                this.clubs[i] = playerNameAndClub[1];
+            } else {
+                this.errors.add("Rad " + lineNumber + ": \"" + columns[i].trim() + "\" är inte ett namn och en klubb");
+                this.names[i] = columns[i].trim();
+                this.clubs[i] = "";
+            }
+        }
+    }
+
+    /**
+     * Reads the results of a round from a line of the file. A line that cannot be read is kept as a round without any
+     * results.
+     *
+     * @param line       The line
+     * @param lineNumber The number of the line
+     */
+    private void readRound(String line, int lineNumber) {
+        String[] columns = line.split(SEPARATOR, -1);
+        int numberOfPlayers = this.names.length;
+
+        if (this.numberOfRounds >= this.lineNumbers.length) {
+            this.lineNumbers = Arrays.copyOf(this.lineNumbers, Math.max(32, this.lineNumbers.length * 2));
+            this.readableRounds = Arrays.copyOf(this.readableRounds, this.lineNumbers.length);
+            this.results = Arrays.copyOf(this.results, this.lineNumbers.length * numberOfPlayers);
+        }
+
+        int offset = this.numberOfRounds * numberOfPlayers;
+        boolean isRoundReadable = true;
+
+        if (columns.length != numberOfPlayers) {
+            this.errors.add("Rad " + lineNumber + ": " + columns.length + " resultat istället för " + numberOfPlayers);
+            isRoundReadable = false;
+        } else {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                try {
+                    this.results[offset + i] = Integer.parseInt(columns[i].trim());
+                } catch (NumberFormatException exception) {
+                    // The other results on the line are still checked, so that they are reported too.
+                    this.errors.add("Rad " + lineNumber + ": \"" + columns[i].trim() + "\" är inte ett heltal");
+                    isRoundReadable = false;
+                }
+            }
+        }
+
+        if (!isRoundReadable) {
+            Arrays.fill(this.results, offset, offset + numberOfPlayers, 0);
+        }
+
+        this.lineNumbers[this.numberOfRounds] = lineNumber;
+        this.readableRounds[this.numberOfRounds] = isRoundReadable;
+        this.numberOfRounds++;
+    }
+
+    /**
+     * Creates the players listed in the file, with the given number of chips each.
+     *
+     * @param numberOfChips The number of chips, by player index
+     * @return The players
+     */
+    PlayerTable createPlayers(int[] numberOfChips) {
+        PlayerTable players = new PlayerTable(this.names.length);
+
+        for (int i = 0; i < this.names.length; i++) {
+            players.add(this.names[i], this.clubs[i], numberOfChips[i]);
+        }
+
+        return players;
+    }
+
+    /**
+     * Copies the results of all players in the given round.
+     *
+     * @param roundNumber The round number, starting from 1
+     * @param results     The array to copy the results to, by player index
+     */
+    void copyResults(int roundNumber, int[] results) {
+        System.arraycopy(this.results, (roundNumber - 1) * this.names.length, results, 0, this.names.length);
+    }
+
+    /**
+     * Returns the line the given round was read from.
+     *
+     * @param roundNumber The round number, starting from 1
+     * @return The line number
+     */
+    int getLineNumber(int roundNumber) {
+        return this.lineNumbers[roundNumber - 1];
+    }
+
+    /**
+     * Returns whether or not the given round could be read. A round that could not be read has no results.
+     *
+     * @param roundNumber The round number, starting from 1
+     * @return The result
+     */
+    boolean isRoundReadable(int roundNumber) {
+        return this.readableRounds[roundNumber - 1];
+    }
+
+    int getNumberOfPlayers() {
+        return this.names.length;
+    }
+
+    int getNumberOfRounds() {
+        return this.numberOfRounds;
+    }
+
+    /**
+     * Returns the lines of the file that could not be read.
+     *
+     * @return The errors, with their line numbers
+     */
+    List<String> getErrors() {
+        return this.errors;
+    }
+}
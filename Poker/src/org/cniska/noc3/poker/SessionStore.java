@@ -0,0 +1,158 @@
+package org.cniska.noc3.poker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps a game of Poker on disk while it is played, so that it can be continued after a crash.
+ *
+ * The game is stored as a snapshot of the whole ledger and a journal of the rounds committed since the snapshot. A
+ * committed round is only appended to the journal and synced, which costs a few bytes and one fsync no matter how long
+ * the game has been going on. Every few rounds a new snapshot is written and the journal is emptied, so continuing a
+ * game never has to replay more than that many rounds from the journal.
+ *
+ * The snapshot is replaced atomically before the journal is emptied, and every round in the journal has its round
+ * number, so rounds that are already in the snapshot are simply skipped if the application dies in between.
+ */
+class SessionStore implements Closeable {
+    private static final String SNAPSHOT_FILE_NAME = "ledger.bin";
+    private static final String JOURNAL_FILE_NAME = "rounds.journal";
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final int snapshotInterval;
+    private ChipJournal journal;
+    private int[] results = new int[0];
+
+    /**
+     * Creates a store for a game in the given directory. Nothing is read or written until the game is started or
+     * resumed.
+     *
+     * @param directory        The directory of the game
+     * @param snapshotInterval The number of rounds between snapshots
+     */
+    SessionStore(Path directory, int snapshotInterval) {
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE_NAME);
+        this.journalPath = directory.resolve(JOURNAL_FILE_NAME);
+        this.snapshotInterval = Math.max(snapshotInterval, 1);
+    }
+
+    /**
+     * Returns whether or not there is a stored game.
+     *
+     * @return The result
+     */
+    boolean hasSession() {
+        return Files.exists(this.snapshotPath);
+    }
+
+    /**
+     * Starts storing a new game, replacing any stored game. The stored game is removed before anything of the new game
+     * is written: the rounds in its journal would otherwise line up with the rounds of the new game and be replayed
+     * onto it if the application died before the journal was emptied.
+     *
+     * @param ledger The ledger of the new game
+     * @throws IOException If the game could not be stored
+     */
+    void start(ChipLedger ledger) throws IOException {
+        this.delete();
+        this.openJournal();
+        this.takeSnapshot(ledger);
+    }
+
+    /**
+     * Reads the stored game from the snapshot and the rounds in the journal after it, and continues storing it.
+     *
+     * @return The ledger of the game
+     * @throws IOException If the game could not be read
+     */
+    ChipLedger resume() throws IOException {
+        ChipLedger ledger = ChipLedger.readFromFile(this.snapshotPath);
+        int numberOfPlayers = ledger.getPlayers().size();
+
+        ChipJournal.replay(this.journalPath, (roundNumber, results) -> {
+            // Rounds that made it into the snapshot are skipped, as is anything after a gap in the rounds.
+            if (roundNumber == ledger.getNumberOfRounds() + 1 && results.length == numberOfPlayers) {
+                ledger.enterResults(results);
+                ledger.commitRound();
+            }
+        });
+
+        this.openJournal();
+
+        return ledger;
+    }
+
+    /**
+     * Stores the last committed round of the game, and returns once it is on disk.
+     *
+     * @param ledger The ledger of the game
+     * @throws IOException If the round could not be stored
+     */
+    void commitRound(ChipLedger ledger) throws IOException {
+        int roundNumber = ledger.getNumberOfRounds();
+        int numberOfPlayers = ledger.getPlayers().size();
+
+        if (this.results.length != numberOfPlayers) {
+            this.results = new int[numberOfPlayers];
+        }
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            this.results[i] = ledger.getResult(roundNumber, i);
+        }
+
+        this.journal.sync(this.journal.append(roundNumber, this.results, numberOfPlayers));
+
+        if (roundNumber % this.snapshotInterval == 0) {
+            this.takeSnapshot(ledger);
+        }
+    }
+
+    /**
+     * Removes the stored game, e.g. once it is over.
+     *
+     * @throws IOException If the files of the game could not be removed
+     */
+    void delete() throws IOException {
+        this.close();
+
+        Files.deleteIfExists(this.snapshotPath);
+        Files.deleteIfExists(this.journalPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Opens the journal for appending, creating the directory of the game if necessary.
+     *
+     * @throws IOException If the journal could not be opened
+     */
+    private void openJournal() throws IOException {
+        this.close();
+
+        if (this.journalPath.getParent() != null) {
+            Files.createDirectories(this.journalPath.getParent());
+        }
+
+        this.journal = new ChipJournal(this.journalPath);
+    }
+
+    /**
+     * Writes the whole ledger as the new snapshot and empties the journal.
+     *
+     * @param ledger The ledger of the game
+     * @throws IOException If the snapshot could not be written
+     */
+    private void takeSnapshot(ChipLedger ledger) throws IOException {
+        ledger.saveToFile(this.snapshotPath);
+        this.journal.clear();
+    }
+}
@@ -0,0 +1,172 @@
+package org.cniska.noc3.poker;
+
+/**
+ * Statistics of the outcomes of simulated games: how often the medals were shared and histograms of how the chips were
+ * spread at the end. Statistics collected by different threads can be merged.
+ */
+class SimulationStatistics {
+    private static final int MAXIMUM_NUMBER_OF_BUCKETS = 1024;
+
+    private final int bucketWidth;
+    private long numberOfGames = 0;
+    private long numberOfInvalidRounds = 0;
+    private long numberOfInvalidGames = 0;
+    private long numberOfSharedGolds = 0;
+    private long numberOfSharedSilvers = 0;
+    private long numberOfGoldsSharedByThree = 0;
+
+    // The difference between the most and the fewest chips at the end, and the chips of the winner, by bucket.
+    private final long[] spreadHistogram;
+    private final long[] winnerHistogram;
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param totalNumberOfChips The total number of chips in a game, i.e. the largest value in the histograms
+     */
+    SimulationStatistics(int totalNumberOfChips) {
+        this.bucketWidth = totalNumberOfChips / MAXIMUM_NUMBER_OF_BUCKETS + 1;
+        this.spreadHistogram = new long[totalNumberOfChips / this.bucketWidth + 1];
+        this.winnerHistogram = new long[this.spreadHistogram.length];
+    }
+
+    /**
+     * Adds the outcome of a game.
+     *
+     * @param numberOfChips   The number of chips of every player at the end of the game
+     * @param numberOfPlayers The number of players
+     */
+    void addGame(int[] numberOfChips, int numberOfPlayers) {
+        int first = Integer.MIN_VALUE;
+        int second = Integer.MIN_VALUE;
+        int third = Integer.MIN_VALUE;
+        int fewest = Integer.MAX_VALUE;
+        int chips;
+
+        // Find the three largest numbers of chips in one pass instead of sorting the players.
+        for (int i = 0; i < numberOfPlayers; i++) {
+            chips = numberOfChips[i];
+            fewest = Math.min(fewest, chips);
+
+            if (chips > first) {
+                third = second;
+                second = first;
+                first = chips;
+            } else if (chips > second) {
+                third = second;
+                second = chips;
+            } else if (chips > third) {
+                third = chips;
+            }
+        }
+
+        this.numberOfGames++;
+
+        // The medals are shared the same way as in Logic.dealMedals, where the next medal is only dealt to a player
+        // with fewer chips than the player before.
+        if (numberOfPlayers >= 2 && first == second) {
+            this.numberOfSharedGolds++;
+
+            if (numberOfPlayers >= 3 && second == third) {
+                this.numberOfGoldsSharedByThree++;
+            }
+        } else if (numberOfPlayers >= 3 && second == third) {
+            this.numberOfSharedSilvers++;
+        }
+
+        this.spreadHistogram[(first - fewest) / this.bucketWidth]++;
+        this.winnerHistogram[Math.max(first, 0) / this.bucketWidth]++;
+    }
+
+    /**
+     * Adds a round that broke the rules of the game, which should never happen.
+     */
+    void addInvalidRound() {
+        this.numberOfInvalidRounds++;
+    }
+
+    /**
+     * Adds a game where the players did not have all chips at the end, which should never happen.
+     */
+    void addInvalidGame() {
+        this.numberOfInvalidGames++;
+    }
+
+    /**
+     * Merges the given statistics into these.
+     *
+     * @param other The other statistics
+     */
+    void addAll(SimulationStatistics other) {
+        this.numberOfGames += other.numberOfGames;
+        this.numberOfInvalidRounds += other.numberOfInvalidRounds;
+        this.numberOfInvalidGames += other.numberOfInvalidGames;
+        this.numberOfSharedGolds += other.numberOfSharedGolds;
+        this.numberOfSharedSilvers += other.numberOfSharedSilvers;
+        this.numberOfGoldsSharedByThree += other.numberOfGoldsSharedByThree;
+
+        for (int i = 0; i < this.spreadHistogram.length; i++) {
+            this.spreadHistogram[i] += other.spreadHistogram[i];
+            this.winnerHistogram[i] += other.winnerHistogram[i];
+        }
+    }
+
+    long getNumberOfGames() {
+        return this.numberOfGames;
+    }
+
+    long getNumberOfInvalidRounds() {
+        return this.numberOfInvalidRounds;
+    }
+
+    long getNumberOfInvalidGames() {
+        return this.numberOfInvalidGames;
+    }
+
+    long getNumberOfSharedGolds() {
+        return this.numberOfSharedGolds;
+    }
+
+    long getNumberOfSharedSilvers() {
+        return this.numberOfSharedSilvers;
+    }
+
+    long getNumberOfGoldsSharedByThree() {
+        return this.numberOfGoldsSharedByThree;
+    }
+
+    /**
+     * Returns the given percentile of the difference between the most and the fewest chips at the end of a game.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The number of chips, rounded down to the width of a histogram bucket
+     */
+    int getSpreadPercentile(double percentile) {
+        return this.getPercentile(this.spreadHistogram, percentile);
+    }
+
+    /**
+     * Returns the given percentile of the number of chips the winner has at the end of a game.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The number of chips, rounded down to the width of a histogram bucket
+     */
+    int getWinnerPercentile(double percentile) {
+        return this.getPercentile(this.winnerHistogram, percentile);
+    }
+
+    private int getPercentile(long[] histogram, double percentile) {
+        long rank = (long) Math.ceil(this.numberOfGames * percentile / 100);
+        long count = 0;
+
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            count += histogram[bucket];
+
+            if (count >= Math.max(rank, 1)) {
+                return bucket * this.bucketWidth;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,199 @@
+package org.cniska.noc3.poker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single game of Poker at one table of a tournament.
+ *
+ * The results of the rounds are submitted to a queue from any thread, and are played by a task that the table runs on
+ * the tournament's executor whenever there is something in the queue. At most one such task runs at a time, so the
+ * players and the ledger of the table are only ever touched by one thread at a time and need no locks.
+ */
+class Table implements Runnable {
+    private final int number;
+    private final Config config;
+    private final PlayerTable players;
+    private final ChipLedger ledger;
+    private final Executor executor;
+
+    private final Queue<int[]> submissions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+    // The total number of chips of every club at the table, by club id, shared with the other tables.
+    private final LongAdder[] clubTotals;
+    private final long[] clubResults;
+
+    // Only touched by the task that plays the rounds. Rejected rounds are counted too, so that every submitted round
+    // keeps its own round number.
+    private final List<String> rejections = new ArrayList<>();
+    private int numberOfSubmittedRounds = 0;
+
+    // The number of chips every player has, replaced after every round so that other threads can read it.
+    private volatile int[] standings;
+
+    /**
+     * Creates a new table.
+     *
+     * @param number     The table number
+     * @param config     The configuration of the game at the table
+     * @param players    The players at the table
+     * @param clubTotals The total number of chips of every club at the table, by club id
+     * @param executor   The executor the rounds are played on
+     */
+    Table(int number, Config config, PlayerTable players, LongAdder[] clubTotals, Executor executor) {
+        this.number = number;
+        this.config = config;
+        this.players = players;
+        this.ledger = new ChipLedger(players);
+        this.clubTotals = clubTotals;
+        this.clubResults = new long[clubTotals.length];
+        this.executor = executor;
+        this.standings = Arrays.copyOf(players.getNumberOfChips(), players.size());
+
+        long[] numberOfChipsPerClub = players.getNumberOfChipsPerClub();
+
+        for (int clubId = 0; clubId < clubTotals.length; clubId++) {
+            this.clubTotals[clubId].add(numberOfChipsPerClub[clubId]);
+        }
+    }
+
+    /**
+     * Submits the results of the next round. The round is played later on the executor.
+     *
+     * @param results The results of all players in the round, which must not be modified afterwards
+     */
+    void submitRound(int[] results) {
+        this.submissions.add(results);
+
+        if (this.isScheduled.compareAndSet(false, true)) {
+            this.executor.execute(this);
+        }
+    }
+
+    /**
+     * Plays every round in the queue.
+     */
+    @Override
+    public void run() {
+        int[] results;
+
+        do {
+            while ((results = this.submissions.poll()) != null) {
+                this.playRound(results);
+            }
+
+            this.isScheduled.set(false);
+
+            // A round may have been submitted after the queue was found empty but before the flag was cleared, in
+            // which case nobody else has scheduled the table.
+        } while (!this.submissions.isEmpty() && this.isScheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Plays a round with the given results if they are valid, and records why it was rejected otherwise.
+     *
+     * @param results The results of all players in the round
+     */
+    private void playRound(int[] results) {
+        int roundNumber = ++this.numberOfSubmittedRounds;
+        String round = "Bord " + this.number + ", runda " + roundNumber + ": ";
+        int numberOfPlayers = this.players.size();
+        boolean isRoundValid = true;
+
+        if (roundNumber > this.config.numberOfRounds) {
+            this.rejections.add(round + "Alla rundor har redan spelats");
+            return;
+        }
+
+        if (results.length != numberOfPlayers) {
+            this.rejections.add(round + results.length + " resultat istället för " + numberOfPlayers);
+            return;
+        }
+
+        if (!Logic.checkThatPlayersHaveEnoughChipsAfterApplyingResults(roundNumber, this.config.numberOfRounds, this.players.getNumberOfChips(), results, numberOfPlayers)) {
+            // Go through the players one by one only to find out which results were not possible.
+            for (int i = 0; i < numberOfPlayers; i++) {
+                if (!Logic.checkThatPlayerHasEnoughChipsAfterApplyingResult(roundNumber, this.config.numberOfRounds, this.players.getPlayer(i), results[i])) {
+                    this.rejections.add(round + "Resultatet " + results[i] + " för " + this.players.getName(i) + " är inte möjligt");
+                }
+            }
+
+            isRoundValid = false;
+        }
+
+        if (!Logic.checkThatResultsAddUpToZero(results)) {
+            this.rejections.add(round + "Spelarnas resultat stämmer inte ihop med det totala antalet spelmärken");
+            isRoundValid = false;
+        }
+
+        if (!isRoundValid) {
+            return;
+        }
+
+        this.ledger.enterResults(results);
+        this.ledger.commitRound();
+
+        // Add up the results per club first, so that every club's shared counter is only touched once per round.
+        for (int i = 0; i < numberOfPlayers; i++) {
+            this.clubResults[this.players.getClubId(i)] += results[i];
+        }
+
+        for (int clubId = 0; clubId < this.clubResults.length; clubId++) {
+            if (this.clubResults[clubId] != 0) {
+                this.clubTotals[clubId].add(this.clubResults[clubId]);
+                this.clubResults[clubId] = 0;
+            }
+        }
+
+        this.standings = Arrays.copyOf(this.players.getNumberOfChips(), numberOfPlayers);
+    }
+
+    int getNumber() {
+        return this.number;
+    }
+
+    /**
+     * Returns the name of the given player, which can be read from any thread.
+     *
+     * @param playerIndex The index of the player
+     * @return The name
+     */
+    String getPlayerName(int playerIndex) {
+        return this.players.getName(playerIndex);
+    }
+
+    /**
+     * Returns the club of the given player, which can be read from any thread.
+     *
+     * @param playerIndex The index of the player
+     * @return The club
+     */
+    String getPlayerClub(int playerIndex) {
+        return this.players.getClub(playerIndex);
+    }
+
+    /**
+     * Returns the number of chips every player had after the latest round, which can be read from any thread.
+     *
+     * @return The number of chips, by player index
+     */
+    int[] getStandings() {
+        return this.standings;
+    }
+
+    /**
+     * Returns why rounds were rejected. Must only be called once the tournament has finished.
+     *
+     * @return The reasons, in the order the rounds were submitted
+     */
+    List<String> getRejections() {
+        return this.rejections;
+    }
+}
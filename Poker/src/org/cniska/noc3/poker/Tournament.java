@@ -0,0 +1,91 @@
+package org.cniska.noc3.poker;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A tournament of many games of Poker played at the same time, each at a table of its own.
+ *
+ * The tables share a fixed pool of threads, but every table plays its rounds one at a time (see Table), so the tables
+ * never wait for each other. The total number of chips of every club is kept in a counter per club that the tables add
+ * their results to as they are played, so the standings of the clubs can be read at any time without a global lock.
+ */
+class Tournament {
+    private final ExecutorService executor;
+    private final List<Table> tables = new CopyOnWriteArrayList<>();
+    private final Map<String, LongAdder> clubTotals = new ConcurrentHashMap<>();
+    private final AtomicInteger numberOfTables = new AtomicInteger(0);
+
+    /**
+     * Creates a new tournament.
+     *
+     * @param numberOfThreads The number of threads the tables are played on
+     */
+    Tournament(int numberOfThreads) {
+        this.executor = Executors.newFixedThreadPool(numberOfThreads);
+    }
+
+    /**
+     * Adds a table with the given players, who start with the number of chips they have now.
+     *
+     * @param config  The configuration of the game at the table
+     * @param players The players at the table
+     * @return The table
+     */
+    Table addTable(Config config, PlayerTable players) {
+        LongAdder[] tableClubTotals = new LongAdder[players.getNumberOfClubs()];
+
+        for (int clubId = 0; clubId < tableClubTotals.length; clubId++) {
+            tableClubTotals[clubId] = this.clubTotals.computeIfAbsent(players.getClubName(clubId), club -> new LongAdder());
+        }
+
+        Table table = new Table(this.numberOfTables.incrementAndGet(), config, players, tableClubTotals, this.executor);
+        this.tables.add(table);
+
+        return table;
+    }
+
+    /**
+     * Waits for every round that has been submitted to be played, after which no more rounds can be submitted.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return Whether or not every round was played before the timeout
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    boolean finish(long timeout, TimeUnit unit) throws InterruptedException {
+        this.executor.shutdown();
+
+        return this.executor.awaitTermination(timeout, unit);
+    }
+
+    List<Table> getTables() {
+        return this.tables;
+    }
+
+    /**
+     * Returns the total number of chips of every club at the moment, the club with the most chips first.
+     *
+     * @return The clubs and their number of chips
+     */
+    List<Map.Entry<String, Long>> getClubStandings() {
+        List<Map.Entry<String, Long>> standings = new ArrayList<>();
+
+        for (Map.Entry<String, LongAdder> clubTotal : this.clubTotals.entrySet()) {
+            standings.add(new AbstractMap.SimpleImmutableEntry<>(clubTotal.getKey(), clubTotal.getValue().sum()));
+        }
+
+        standings.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        return standings;
+    }
+}
@@ -0,0 +1,173 @@
+package org.cniska.noc3.poker;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulates a large number of random games of Poker that follow the rules of the game, to see what the outcomes of a
+ * game with a given configuration look like.
+ *
+ * The games are split between the threads of a fork-join pool. Every task has a random number generator split off
+ * from its parent's, so the simulation gives the same result for the same seed no matter how the work is split. The
+ * games of a task are played in the same buffers and counted in statistics of its own, which are merged when the
+ * tasks are joined.
+ */
+class TournamentSimulator {
+    // A task plays its games itself once there are this few of them, or splits them in two otherwise.
+    private static final long MINIMUM_NUMBER_OF_GAMES_TO_SPLIT = 4096;
+
+    private final Config config;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new simulator.
+     *
+     * @param config The configuration of the simulated games
+     * @param pool   The pool the games are played on
+     */
+    TournamentSimulator(Config config, ForkJoinPool pool) {
+        this.config = config;
+        this.pool = pool;
+    }
+
+    /**
+     * Simulates the given number of games.
+     *
+     * @param numberOfGames The number of games
+     * @param seed          The seed of the random number generator
+     * @return The statistics of the outcomes
+     */
+    SimulationStatistics simulate(long numberOfGames, long seed) {
+        return this.pool.invoke(new SimulationTask(this.config, numberOfGames, new SplittableRandom(seed)));
+    }
+
+    /**
+     * A part of the games of a simulation.
+     */
+    private static class SimulationTask extends RecursiveTask<SimulationStatistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final Config config;
+        private final long numberOfGames;
+        private final SplittableRandom random;
+
+        SimulationTask(Config config, long numberOfGames, SplittableRandom random) {
+            this.config = config;
+            this.numberOfGames = numberOfGames;
+            this.random = random;
+        }
+
+        @Override
+        protected SimulationStatistics compute() {
+            if (this.numberOfGames < MINIMUM_NUMBER_OF_GAMES_TO_SPLIT) {
+                return this.playGames();
+            }
+
+            long numberOfFirstGames = this.numberOfGames / 2;
+            SimulationTask first = new SimulationTask(this.config, numberOfFirstGames, this.random.split());
+            SimulationTask second = new SimulationTask(this.config, this.numberOfGames - numberOfFirstGames, this.random.split());
+
+            first.fork();
+
+            SimulationStatistics statistics = second.compute();
+            statistics.addAll(first.join());
+
+            return statistics;
+        }
+
+        /**
+         * Plays the games of the task one after another in the same buffers.
+         *
+         * @return The statistics of the outcomes
+         */
+        private SimulationStatistics playGames() {
+            int numberOfPlayers = this.config.numberOfPlayers;
+            SimulationStatistics statistics = new SimulationStatistics(this.config.totalNumberOfChips);
+            PlayerTable players = new PlayerTable(numberOfPlayers);
+            int[] initialNumberOfChips = new int[numberOfPlayers];
+            int[] results = new int[numberOfPlayers];
+            int[] contenders = new int[numberOfPlayers];
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                initialNumberOfChips[i] = Logic.calculateNumberOfPlayerChips(i, numberOfPlayers, this.config.totalNumberOfChips);
+                players.add("Spelare" + (i + 1), "Simulering", initialNumberOfChips[i]);
+            }
+
+            int[] numberOfChips = players.getNumberOfChips();
+
+            for (long game = 0; game < this.numberOfGames; game++) {
+                System.arraycopy(initialNumberOfChips, 0, numberOfChips, 0, numberOfPlayers);
+
+                for (int roundNumber = 1; roundNumber <= this.config.numberOfRounds; roundNumber++) {
+                    this.dealRound(roundNumber, numberOfChips, results, contenders);
+
+                    if (Logic.checkThatPlayersHaveEnoughChipsAfterApplyingResults(roundNumber, this.config.numberOfRounds, numberOfChips, results, numberOfPlayers)
+                            && Logic.checkThatResultsAddUpToZero(results)) {
+                        for (int i = 0; i < numberOfPlayers; i++) {
+                            numberOfChips[i] += results[i];
+                        }
+                    } else {
+                        statistics.addInvalidRound();
+                    }
+                }
+
+                if (!Logic.checkTotalNumberOfChipsForPlayers(players, this.config.totalNumberOfChips)) {
+                    statistics.addInvalidGame();
+                }
+
+                statistics.addGame(numberOfChips, numberOfPlayers);
+            }
+
+            return statistics;
+        }
+
+        /**
+         * Deals a random round. Every player puts the ante in the pot and either folds or bets a random amount of the
+         * chips they can spare, i.e. keeping the chips needed for the blinds of the remaining rounds. One of the
+         * players who bet wins the pot, or now and then two of them split it.
+         *
+         * @param roundNumber   The round number
+         * @param numberOfChips The number of chips of every player before the round
+         * @param results       The array to put the result of every player in
+         * @param contenders    A buffer for the players who bet
+         */
+        private void dealRound(int roundNumber, int[] numberOfChips, int[] results, int[] contenders) {
+            int numberOfPlayers = this.config.numberOfPlayers;
+            int numberOfChipsRequiredForBlinds = this.config.numberOfRounds - roundNumber;
+            int numberOfContenders = 0;
+            int pot = 0;
+            int numberOfChipsToSpare;
+            int bet;
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                numberOfChipsToSpare = numberOfChips[i] - numberOfChipsRequiredForBlinds;
+
+                if (numberOfChipsToSpare <= 0) {
+                    bet = 0;
+                } else if (this.random.nextBoolean()) {
+                    bet = 1;
+                } else {
+                    bet = 1 + this.random.nextInt(numberOfChipsToSpare);
+                    contenders[numberOfContenders++] = i;
+                }
+
+                results[i] = -bet;
+                pot += bet;
+            }
+
+            if (numberOfContenders == 0) {
+                // Everybody folded, so the pot goes to any player.
+                results[this.random.nextInt(numberOfPlayers)] += pot;
+            } else if (numberOfContenders >= 2 && this.random.nextInt(10) == 0) {
+                int first = this.random.nextInt(numberOfContenders);
+                int second = (first + 1 + this.random.nextInt(numberOfContenders - 1)) % numberOfContenders;
+
+                results[contenders[first]] += pot - pot / 2;
+                results[contenders[second]] += pot / 2;
+            } else {
+                results[contenders[this.random.nextInt(numberOfContenders)]] += pot;
+            }
+        }
+    }
+}
@@ -1,15 +1,55 @@
 package org.cniska.noc3.textanalyzer;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 class App {
     private static final String BOOK_URI = "http://manybooks.net/send/1:text:.txt:text/topeliusz2724927249-8/topeliusz2724927249-8.txt";
+    private static final Charset BOOK_CHARSET = StandardCharsets.UTF_8;
+    private static final String BOOK_CACHE_DIRECTORY = System.getProperty("user.home") + "/.noc3/books";
     private static final String WORDLIST_FILE_PATH = "/Users/chris/ordlista.csv";
     private static final int TIMES_TO_ANALYZE = 1;
+    private static final int NUMBER_OF_CORPUS_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAXIMUM_NUMBER_OF_BOOKS_IN_FLIGHT = NUMBER_OF_CORPUS_THREADS * 2;
+    private static final long DEDUPLICATION_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+    private static final int MAXIMUM_EDIT_DISTANCE = 2;
+    private static final int NUMBER_OF_NEAREST_WORDS_TO_OUTPUT = 10;
+    private static final String METRICS_DIRECTORY = System.getProperty("user.home") + "/.noc3/metrics";
+    private static final String CHECKPOINT_DIRECTORY = System.getProperty("user.home") + "/.noc3/checkpoint";
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 30000;
+    private static final long QUIET_PERIOD_MILLIS = 2000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 60000;
+    private static final int CO_OCCURRENCE_WINDOW = 4;
+    private static final int NGRAM_SKETCH_WIDTH = 1 << 15;
+    private static final int NGRAM_SKETCH_DEPTH = 4;
+    private static final int NUMBER_OF_HEAVY_HITTER_NGRAMS = 1000;
+    private static final int NUMBER_OF_NGRAMS_TO_OUTPUT = 10;
+
+    private final BookSources bookSources = new BookSources(BOOK_CHARSET, new BookCache(Paths.get(BOOK_CACHE_DIRECTORY)));
+    private final boolean isSuggestingNearestWords;
+
+    /**
+     * @param isSuggestingNearestWords Whether or not to suggest the nearest known words for the new words of a book,
+     *                                 which needs an index several times larger than the wordlist
+     */
+    App(boolean isSuggestingNearestWords) {
+        this.isSuggestingNearestWords = isSuggestingNearestWords;
+    }
 
     void run() {
         Book book = new Book();
-        book.readWordsFromUri(BOOK_URI);
+
+        try {
+            book.readWordsFromSource(bookSources.resolveBook(BOOK_URI), createNgramStatistics());
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
 
         Wordlist wordlist = new Wordlist();
         wordlist.readFromFile(WORDLIST_FILE_PATH);
@@ -17,28 +57,206 @@ class App {
         for (int i = 0; i < TIMES_TO_ANALYZE; i++) {
             analyze(book, wordlist);
         }
+
+        wordlist.writeToFile(createWordlistFilePath(System.currentTimeMillis(), ""));
+        writeMetrics("book");
+    }
+
+    void runCorpus(String corpusPath) {
+        Corpus corpus;
+
+        try {
+            corpus = Corpus.readFromPath(corpusPath, bookSources);
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+            return;
+        }
+
+        Wordlist wordlist = new Wordlist();
+        wordlist.readFromFile(WORDLIST_FILE_PATH);
+
+        NgramStatistics ngrams = createNgramStatistics();
+        corpus.analyze(wordlist, NUMBER_OF_CORPUS_THREADS, MAXIMUM_NUMBER_OF_BOOKS_IN_FLIGHT, ngrams);
+
+        UI.outputLine("- De vanligaste ordparen: " + ngrams.describeMostFrequent(NgramStatistics.Kind.BIGRAMS, NUMBER_OF_NGRAMS_TO_OUTPUT));
+        UI.outputLine("- De vanligaste ordtrippletterna: " + ngrams.describeMostFrequent(NgramStatistics.Kind.TRIGRAMS, NUMBER_OF_NGRAMS_TO_OUTPUT));
+        UI.outputLine("- Orden som oftast förekom nära varandra: " + ngrams.describeMostFrequent(NgramStatistics.Kind.CO_OCCURRENCES, NUMBER_OF_NGRAMS_TO_OUTPUT));
+
+        wordlist.writeToFile(createWordlistFilePath(System.currentTimeMillis(), ""));
+        writeMetrics("corpus");
+    }
+
+    /**
+     * Keeps adding the words of the books that arrive in the given directory to the wordlist until the program is
+     * stopped. The wordlist is checkpointed as it grows, and a restart continues from the last checkpoint.
+     */
+    void runWatch(String directoryPath) {
+        Wordlist wordlist = new Wordlist();
+        WordlistCheckpoint checkpoint;
+        Set<String> books;
+
+        try {
+            checkpoint = new WordlistCheckpoint(Paths.get(CHECKPOINT_DIRECTORY));
+
+            // The first time around the wordlist is read the usual way, after that it always comes from the checkpoint.
+            boolean isFirstRun = !checkpoint.hasSnapshot();
+
+            if (isFirstRun) {
+                wordlist.readFromFile(WORDLIST_FILE_PATH);
+            } else {
+                UI.outputLine("Fortsätter från kontrollpunkten: " + CHECKPOINT_DIRECTORY);
+            }
+
+            books = checkpoint.restore(wordlist);
+
+            if (isFirstRun) {
+                checkpoint.compact(wordlist, books);
+            }
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+            return;
+        }
+
+        // Stopping the program stops the watcher, which then writes a last checkpoint before the program exits. The
+        // watcher is not interrupted, since that would abort a checkpoint it is writing and leave a partial entry.
+        CorpusWatcher watcher = new CorpusWatcher(Paths.get(directoryPath), bookSources, checkpoint, CHECKPOINT_INTERVAL_MILLIS, QUIET_PERIOD_MILLIS);
+        Thread watcherThread = Thread.currentThread();
+        Thread shutdownHook = new Thread(() -> {
+            watcher.stop();
+
+            try {
+                watcherThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            watcher.watch(wordlist, books);
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+
+        writeMetrics("watch");
+    }
+
+    void runDeduplication(String outputFilePath, List<String> inputFilePaths) {
+        Path temporaryDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+        Wordlist.deduplicateFiles(inputFilePaths, outputFilePath, temporaryDirectory, DEDUPLICATION_MEMORY_BUDGET, true);
+        writeMetrics("dedup");
     }
 
     void analyze(Book book, Wordlist wordlist) {
-        long startTime, endTime;
-        int numberOfWordsBefore, numberOfWordsAfter;
+        long endTime;
+        Vocabulary newWords;
 
         UI.outputLine("Analyserar boken med ordlistan");
 
-        numberOfWordsBefore = wordlist.getNumberOfWords();
-        startTime = System.currentTimeMillis();
+        // The index has to be built before the new words are added, otherwise every new word would only find itself.
+        FuzzyIndex fuzzyIndex = isSuggestingNearestWords ? buildFuzzyIndex(wordlist) : null;
 
-        ArrayList<String> wordsInBook = book.getWords();
+        long shuffleNanos = Metrics.getTotalNanos(Metrics.Stage.SHUFFLE);
+        long mergeNanos = Metrics.getTotalNanos(Metrics.Stage.MERGE);
+
+        Vocabulary wordsInBook = book.getWords();
         wordlist.shuffleWords();
-        wordlist.addWordsThatDontExist(wordsInBook);
+        newWords = wordlist.addWordsThatDontExist(wordsInBook);
 
         endTime = System.currentTimeMillis();
-        numberOfWordsAfter = wordlist.getNumberOfWords();
+        shuffleNanos = Metrics.getTotalNanos(Metrics.Stage.SHUFFLE) - shuffleNanos;
+        mergeNanos = Metrics.getTotalNanos(Metrics.Stage.MERGE) - mergeNanos;
+
+        UI.outputLine("- Analysen tog: " + (shuffleNanos + mergeNanos) / 1e9 + " sek. (blandning " + shuffleNanos / 1e9
+                + " sek., sammanslagning " + mergeNanos / 1e9 + " sek.)");
+        UI.outputLine("- Antalet nya ord: " + newWords.size());
+
+        if (fuzzyIndex != null) {
+            outputNearestWords(newWords, fuzzyIndex);
+        }
+
+        BloomFilter bloomFilter = wordlist.getBloomFilter();
+        UI.outputLine("- Bloomfiltret avvisade " + bloomFilter.getNumberOfRejections() + " av " + bloomFilter.getNumberOfChecks()
+                + " ord direkt, " + bloomFilter.getNumberOfFalsePositives() + " falska positiva (" + bloomFilter.getSizeInBytes() / 1024 + " kB)");
+
+        // Only the new words are written after each analysis, the whole wordlist is written once when we are done.
+        wordlist.writeNewWordsToFile(createWordlistFilePath(endTime, "_nya"));
+    }
+
+    /**
+     * Builds the index for suggesting the nearest known words, or returns null if the wordlist is too large for it. The
+     * suggestions are only extra information, so the analysis goes on without them.
+     */
+    private FuzzyIndex buildFuzzyIndex(Wordlist wordlist) {
+        try {
+            return wordlist.buildFuzzyIndex(MAXIMUM_EDIT_DISTANCE);
+        } catch (IllegalArgumentException e) {
+            UI.outputLine("- Ordlistan är för stor för att föreslå närliggande ord");
+            return null;
+        }
+    }
+
+    private void outputNearestWords(Vocabulary newWords, FuzzyIndex fuzzyIndex) {
+        long startTime = System.currentTimeMillis();
+        FuzzyIndex.Match[] matches = fuzzyIndex.findNearestWords(newWords, ForkJoinPool.commonPool());
+        long endTime = System.currentTimeMillis();
+        int numberOfWordsWithMatches = 0;
+
+        for (FuzzyIndex.Match match : matches) {
+            if (match != null) {
+                numberOfWordsWithMatches++;
+            }
+        }
 
-        UI.outputLine("- Analysen tog: " + (endTime - startTime) / 1000.0 + " sek.");
-        UI.outputLine("- Antalet nya ord: " + (numberOfWordsAfter - numberOfWordsBefore));
+        UI.outputLine("- " + numberOfWordsWithMatches + " av de nya orden ligger nära ett känt ord (högst "
+                + MAXIMUM_EDIT_DISTANCE + " ändringar, " + (endTime - startTime) / 1000.0 + " sek.)");
 
+        for (int id = 0, numberOfWordsOutput = 0; id < matches.length && numberOfWordsOutput < NUMBER_OF_NEAREST_WORDS_TO_OUTPUT; id++) {
+            if (matches[id] == null) {
+                continue;
+            }
+
+            StringBuilder nearestWords = new StringBuilder();
+
+            for (int wordId : matches[id].getWordIds()) {
+                nearestWords.append(nearestWords.length() > 0 ? ", " : "").append(fuzzyIndex.getWord(wordId));
+            }
+
+            UI.outputLine("  - " + newWords.getWord(id) + " -> " + nearestWords + " (" + matches[id].getDistance() + ")");
+            numberOfWordsOutput++;
+        }
+    }
+
+    /**
+     * Appends the metrics of the run to a JSON lines file, which keeps the history of every run, and replaces the
+     * Prometheus text file with the latest run.
+     */
+    private void writeMetrics(String runName) {
+        UI.outputLine("Tid per steg:");
+
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            if (Metrics.getNumberOfTimings(stage) > 0) {
+                UI.outputLine("- " + stage.getName() + ": " + Metrics.getTotalNanos(stage) / 1e9 + " sek. ("
+                        + Metrics.getNumberOfTimings(stage) + " gånger)");
+            }
+        }
+
+        try {
+            Metrics.appendJsonLine(Paths.get(METRICS_DIRECTORY, "metrics.jsonl"), runName);
+            Metrics.writePrometheusFile(Paths.get(METRICS_DIRECTORY, "metrics.prom"));
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+    }
+
+    private static NgramStatistics createNgramStatistics() {
+        return new NgramStatistics(CO_OCCURRENCE_WINDOW, NGRAM_SKETCH_WIDTH, NGRAM_SKETCH_DEPTH, NUMBER_OF_HEAVY_HITTER_NGRAMS);
+    }
+
+    private static String createWordlistFilePath(long timestamp, String suffix) {
         String[] fileParts = WORDLIST_FILE_PATH.split("\\.");
-        wordlist.writeToFile(fileParts[0] + "_" + endTime + "." + fileParts[1]);
+
+        return fileParts[0] + "_" + timestamp + suffix + "." + fileParts[1];
     }
 }
\ No newline at end of file
@@ -0,0 +1,358 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A wordlist stored as a sorted table of length prefixed UTF-8 strings.
+ *
+ * The file starts with a fixed size header (magic, version, flags, number of words, checksum, size of the string
+ * table and size of the hash index), followed by the offset of every word in the string table, the string table
+ * itself and an optional open addressing hash index. Because of this a mapped file can be queried directly without
+ * parsing it first.
+ */
+class BinaryWordlist {
+    private static final int MAGIC = 0x4E4F4357;
+    private static final int VERSION = 1;
+    private static final int FLAG_HAS_INDEX = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final int numberOfWords;
+    private final long offsetsPosition;
+    private final long dataPosition;
+    private final long indexPosition;
+    private final int indexSize;
+
+    private BinaryWordlist(MappedByteBuffer[] segments, int numberOfWords, long dataLength, int indexSize) {
+        this.segments = segments;
+        this.numberOfWords = numberOfWords;
+        this.offsetsPosition = HEADER_SIZE;
+        this.dataPosition = offsetsPosition + (long) numberOfWords * Long.BYTES;
+        this.indexPosition = dataPosition + dataLength;
+        this.indexSize = indexSize;
+    }
+
+    static BinaryWordlist open(Path path, boolean verifyChecksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            while (header.hasRemaining() && channel.read(header, header.position()) != -1) {
+                // Keep reading until the whole header is in the buffer.
+            }
+
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a binary wordlist: " + path);
+            }
+
+            if (header.getInt() != VERSION) {
+                throw new IOException("Unsupported binary wordlist version: " + path);
+            }
+
+            int flags = header.getInt();
+            int numberOfWords = header.getInt();
+            long checksum = header.getLong();
+            long dataLength = header.getLong();
+            int indexSize = (flags & FLAG_HAS_INDEX) != 0 ? header.getInt() : 0;
+
+            long size = channel.size();
+            int numberOfSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[numberOfSegments];
+
+            // Every segment is mapped with a few extra bytes so that a length prefix or an index slot never has to be
+            // read across two segments.
+            for (int i = 0; i < numberOfSegments; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1 + Long.BYTES, size - position));
+            }
+
+            BinaryWordlist wordlist = new BinaryWordlist(segments, numberOfWords, dataLength, indexSize);
+
+            if (verifyChecksum && wordlist.calculateChecksum(size) != checksum) {
+                throw new IOException("Checksum mismatch in binary wordlist: " + path);
+            }
+
+            return wordlist;
+        }
+    }
+
+    static void write(Vocabulary words, Path path, boolean withIndex) throws IOException {
+        byte[][] encodedWords = new byte[words.size()][];
+        int i;
+
+        for (i = 0; i < encodedWords.length; i++) {
+            encodedWords[i] = new byte[words.getWordLength(i)];
+            words.copyWord(i, encodedWords[i], 0);
+        }
+
+        Arrays.sort(encodedWords, BinaryWordlist::compareBytes);
+
+        long[] offsets = new long[encodedWords.length];
+        long dataLength = 0;
+
+        for (i = 0; i < encodedWords.length; i++) {
+            offsets[i] = dataLength;
+            dataLength += sizeOfLength(encodedWords[i].length) + encodedWords[i].length;
+        }
+
+        int[] index = withIndex ? buildIndex(encodedWords) : new int[0];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+
+            CRC32 checksum = new CRC32();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+
+            for (long offset : offsets) {
+                output.writeLong(offset);
+            }
+
+            for (byte[] word : encodedWords) {
+                writeLength(output, word.length);
+                output.write(word);
+            }
+
+            for (int slot : index) {
+                output.writeInt(slot);
+            }
+
+            output.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(withIndex ? FLAG_HAS_INDEX : 0);
+            header.putInt(encodedWords.length);
+            header.putLong(checksum.getValue());
+            header.putLong(dataLength);
+            header.putInt(index.length);
+            header.flip();
+
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    int getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    String getWord(int wordIndex) {
+        long position = dataPosition + getLong(offsetsPosition + (long) wordIndex * Long.BYTES);
+        int length = readLength(position);
+        byte[] bytes = new byte[length];
+        position += sizeOfLength(length);
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = getByte(position + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Passes every word to the given sink in sorted order, without loading the whole list into memory.
+     */
+    void forEachWord(WordSink sink) throws IOException {
+        byte[] bytes = new byte[64];
+        long position;
+        int length;
+
+        for (int wordIndex = 0; wordIndex < numberOfWords; wordIndex++) {
+            position = dataPosition + getLong(offsetsPosition + (long) wordIndex * Long.BYTES);
+            length = readLength(position);
+            position += sizeOfLength(length);
+
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+
+            for (int i = 0; i < length; i++) {
+                bytes[i] = getByte(position + i);
+            }
+
+            sink.accept(bytes, 0, length);
+        }
+    }
+
+    boolean contains(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+        return indexSize > 0 ? containsUsingIndex(bytes) : containsUsingBinarySearch(bytes);
+    }
+
+    private boolean containsUsingIndex(byte[] word) {
+        int mask = indexSize - 1;
+        int slot = hash(word) & mask;
+        int entry;
+
+        while ((entry = getInt(indexPosition + (long) slot * Integer.BYTES)) != 0) {
+            if (compareWithWord(entry - 1, word) == 0) {
+                return true;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    private boolean containsUsingBinarySearch(byte[] word) {
+        int low = 0;
+        int high = numberOfWords - 1;
+        int middle, comparison;
+
+        while (low <= high) {
+            middle = (low + high) >>> 1;
+            comparison = compareWithWord(middle, word);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int compareWithWord(int wordIndex, byte[] word) {
+        long position = dataPosition + getLong(offsetsPosition + (long) wordIndex * Long.BYTES);
+        int length = readLength(position);
+        position += sizeOfLength(length);
+        int minimumLength = Math.min(length, word.length);
+        int comparison;
+
+        for (int i = 0; i < minimumLength; i++) {
+            comparison = (getByte(position + i) & 0xFF) - (word[i] & 0xFF);
+
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return length - word.length;
+    }
+
+    private long calculateChecksum(long size) {
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        long position = HEADER_SIZE;
+        int length;
+
+        while (position < size) {
+            length = (int) Math.min(buffer.length, size - position);
+
+            for (int i = 0; i < length; i++) {
+                buffer[i] = getByte(position + i);
+            }
+
+            checksum.update(buffer, 0, length);
+            position += length;
+        }
+
+        return checksum.getValue();
+    }
+
+    private byte getByte(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private int getInt(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    private long getLong(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    private int readLength(long position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = getByte(position++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return length;
+    }
+
+    private static void writeLength(OutputStream output, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            output.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+
+        output.write(length);
+    }
+
+    private static int sizeOfLength(int length) {
+        int size = 1;
+
+        while ((length >>>= 7) != 0) {
+            size++;
+        }
+
+        return size;
+    }
+
+    private static int[] buildIndex(byte[][] words) {
+        int[] index = new int[Integer.highestOneBit(Math.max(1, words.length * 2 - 1)) << 1];
+        int mask = index.length - 1;
+        int slot;
+
+        for (int i = 0; i < words.length; i++) {
+            slot = hash(words[i]) & mask;
+
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            index[slot] = i + 1;
+        }
+
+        return index;
+    }
+
+    private static int hash(byte[] bytes) {
+        return Vocabulary.hash(bytes, 0, bytes.length);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int minimumLength = Math.min(a.length, b.length);
+        int comparison;
+
+        for (int i = 0; i < minimumLength; i++) {
+            comparison = (a[i] & 0xFF) - (b[i] & 0xFF);
+
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return a.length - b.length;
+    }
+}
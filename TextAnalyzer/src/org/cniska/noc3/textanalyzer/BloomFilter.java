@@ -0,0 +1,202 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A Bloom filter over word hashes. It can tell for certain that a word has never been added, which lets most new words
+ * skip the lookup in the exact index.
+ *
+ * The bit positions are derived from the word hash that the vocabulary already keeps, using double hashing, so adding
+ * and checking a word never touches the word itself.
+ *
+ * The filter also keeps a fingerprint of the hashes added to it, which does not depend on the order they were added in.
+ * A saved filter is only valid for a wordlist with the same fingerprint: a filter that has not seen every word in the
+ * list would let words that are already in it be added again.
+ */
+class BloomFilter {
+    private static final int MAGIC = 0x4E4F4343;
+
+    private final long[] bits;
+    private final long numberOfBits;
+    private final int numberOfHashFunctions;
+    private final int expectedNumberOfWords;
+    private final double falsePositiveRate;
+    private int numberOfWords = 0;
+    private long fingerprint = 0;
+
+    private long numberOfChecks = 0;
+    private long numberOfRejections = 0;
+    private long numberOfFalsePositives = 0;
+
+    BloomFilter(int expectedNumberOfWords, double falsePositiveRate) {
+        long optimalNumberOfBits = (long) Math.ceil(-Math.max(1, expectedNumberOfWords) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+        this.bits = new long[(int) ((optimalNumberOfBits + 63) / 64)];
+        this.numberOfBits = bits.length * 64L;
+        this.numberOfHashFunctions = Math.max(1, (int) Math.round((double) numberOfBits / Math.max(1, expectedNumberOfWords) * Math.log(2)));
+        this.expectedNumberOfWords = expectedNumberOfWords;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    private BloomFilter(long[] bits, int numberOfHashFunctions, int expectedNumberOfWords, double falsePositiveRate, int numberOfWords, long fingerprint) {
+        this.bits = bits;
+        this.numberOfBits = bits.length * 64L;
+        this.numberOfHashFunctions = numberOfHashFunctions;
+        this.expectedNumberOfWords = expectedNumberOfWords;
+        this.falsePositiveRate = falsePositiveRate;
+        this.numberOfWords = numberOfWords;
+        this.fingerprint = fingerprint;
+    }
+
+    void add(int hash) {
+        long secondHash = secondHash(hash);
+        long combinedHash = hash;
+
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            long bit = Math.floorMod(combinedHash, numberOfBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            combinedHash += secondHash;
+        }
+
+        numberOfWords++;
+        fingerprint += fingerprintOf(hash);
+    }
+
+    /**
+     * Returns the part of a fingerprint that comes from a single hash. A fingerprint is the sum of the parts of its
+     * hashes, so the same hashes give the same fingerprint in any order.
+     */
+    static long fingerprintOf(int hash) {
+        // The finalizer of SplitMix64 spreads every bit of the hash over the whole fingerprint.
+        long z = (hash & 0xFFFFFFFFL) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return False if the word with the given hash has definitely not been added, true if it might have been
+     */
+    boolean mightContain(int hash) {
+        long secondHash = secondHash(hash);
+        long combinedHash = hash;
+
+        numberOfChecks++;
+
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            long bit = Math.floorMod(combinedHash, numberOfBits);
+
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                numberOfRejections++;
+                return false;
+            }
+
+            combinedHash += secondHash;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records that a word the filter might have contained turned out not to be in the exact index.
+     */
+    void recordFalsePositive() {
+        numberOfFalsePositives++;
+    }
+
+    /**
+     * Carries over the statistics of a filter this filter replaces.
+     */
+    void addStatisticsFrom(BloomFilter other) {
+        numberOfChecks += other.numberOfChecks;
+        numberOfRejections += other.numberOfRejections;
+        numberOfFalsePositives += other.numberOfFalsePositives;
+    }
+
+    boolean isFull() {
+        return numberOfWords > expectedNumberOfWords;
+    }
+
+    int getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    int getExpectedNumberOfWords() {
+        return expectedNumberOfWords;
+    }
+
+    double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    long getNumberOfChecks() {
+        return numberOfChecks;
+    }
+
+    long getNumberOfRejections() {
+        return numberOfRejections;
+    }
+
+    long getNumberOfFalsePositives() {
+        return numberOfFalsePositives;
+    }
+
+    long getSizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    void writeToFile(Path path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(numberOfHashFunctions);
+            output.writeInt(expectedNumberOfWords);
+            output.writeDouble(falsePositiveRate);
+            output.writeInt(numberOfWords);
+            output.writeLong(fingerprint);
+            output.writeInt(bits.length);
+
+            for (long word : bits) {
+                output.writeLong(word);
+            }
+        }
+    }
+
+    static BloomFilter readFromFile(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a Bloom filter: " + path);
+            }
+
+            int numberOfHashFunctions = input.readInt();
+            int expectedNumberOfWords = input.readInt();
+            double falsePositiveRate = input.readDouble();
+            int numberOfWords = input.readInt();
+            long fingerprint = input.readLong();
+            long[] bits = new long[input.readInt()];
+
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = input.readLong();
+            }
+
+            return new BloomFilter(bits, numberOfHashFunctions, expectedNumberOfWords, falsePositiveRate, numberOfWords, fingerprint);
+        }
+    }
+
+    private static long secondHash(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+
+        // An odd step makes sure the probes do not repeat too early.
+        return (hash & 0xFFFFFFFFL) | 1;
+    }
+}
@@ -1,49 +1,99 @@
 package org.cniska.noc3.textanalyzer;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.io.Reader;
 
 class Book {
-    private static String anythingButWordsAndSpacesPattern = "(?i)[^a-zåäö ]+";
-    private ArrayList<String> words = new ArrayList<>();
+    private static final int NUMBER_OF_MOST_FREQUENT_WORDS = 10;
 
-    void readWordsFromUri(String uri) {
-        ArrayList<String> readWords = new ArrayList<>();
+    private String name;
+    private WordFrequencies frequencies = new WordFrequencies();
+    private NgramStatistics ngrams;
 
-        UI.outputLine("Läser ord från boken: " + uri);
+    void readWordsFromSource(BookSource source) {
+        readWordsFromSource(source, null);
+    }
+
+    /**
+     * Reads the words of the book and outputs what they look like, counting the n-grams of the book in the given
+     * statistics as well unless they are null.
+     */
+    void readWordsFromSource(BookSource source, NgramStatistics ngrams) {
+        UI.outputLine("Läser ord från boken: " + source.getName());
 
         try {
-            URL url = new URL(uri);
-            InputStreamReader input = new InputStreamReader(url.openStream());
-            BufferedReader reader = new BufferedReader(input);
-            String line;
-            String[] wordsOnLine;
-
-            while ((line = reader.readLine()) != null) {
-                wordsOnLine = line.replaceAll(anythingButWordsAndSpacesPattern, "").split(" ");
-
-                for (String word : wordsOnLine) {
-                    readWords.add(word.toLowerCase());
-                }
-            }
+            readWords(source, ngrams);
         } catch (IOException e) {
             UI.outputLine("Ett fel uppstod");
         }
 
-        UI.outputLine("- Boken innehöll " + readWords.size() + " ord");
+        UI.outputLine("- Boken innehöll " + frequencies.getNumberOfWords() + " ord");
+        UI.outputLine("- Boken innehöll " + frequencies.getWords().size() + " olika ord");
+        UI.outputLine("- Boken innehöll " + frequencies.getNumberOfHapaxes() + " ord som förekom endast en gång");
+        UI.outputLine("- De vanligaste orden: " + describeMostFrequentWords(NUMBER_OF_MOST_FREQUENT_WORDS));
+
+        if (ngrams != null) {
+            UI.outputLine("- De vanligaste ordparen: " + ngrams.describeMostFrequent(NgramStatistics.Kind.BIGRAMS, NUMBER_OF_MOST_FREQUENT_WORDS));
+            UI.outputLine("- De vanligaste ordtrippletterna: " + ngrams.describeMostFrequent(NgramStatistics.Kind.TRIGRAMS, NUMBER_OF_MOST_FREQUENT_WORDS));
+            UI.outputLine("- Orden som oftast förekom nära varandra: " + ngrams.describeMostFrequent(NgramStatistics.Kind.CO_OCCURRENCES, NUMBER_OF_MOST_FREQUENT_WORDS));
+        }
+    }
+
+    void readWords(BookSource source) throws IOException {
+        readWords(source, null);
+    }
+
+    /**
+     * Reads the words of the book without any output, counting the n-grams of the book in the given statistics as
+     * well unless they are null.
+     */
+    @SuppressWarnings("try")
+    void readWords(BookSource source, NgramStatistics ngrams) throws IOException {
+        WordFrequencies readFrequencies = new WordFrequencies();
+
+        this.name = source.getName();
+        this.ngrams = ngrams;
+
+        try (Reader reader = source.openReader(); Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.TOKENIZE)) {
+            new Tokenizer().tokenize(reader, readFrequencies, ngrams);
+        } finally {
+            frequencies = readFrequencies;
+        }
+
+        Metrics.increment(Metrics.Counter.TOKENS, frequencies.getNumberOfWords());
+        Metrics.increment(Metrics.Counter.DISTINCT_WORDS, frequencies.getWords().size());
+    }
+
+    private String describeMostFrequentWords(int numberOfWords) {
+        StringBuilder description = new StringBuilder();
+
+        for (int id : frequencies.getMostFrequentWords(numberOfWords)) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+
+            description.append(frequencies.getWords().getWord(id)).append(" (").append(frequencies.getCount(id)).append(")");
+        }
+
+        return description.toString();
+    }
+
+    String getName() {
+        return name;
+    }
 
-        words = readWords.stream()
-                .distinct()
-                .collect(Collectors.toCollection(ArrayList::new));
+    Vocabulary getWords() {
+        return frequencies.getWords();
+    }
 
-        UI.outputLine("- Boken innehöll " + words.size() + " olika ord");
+    WordFrequencies getFrequencies() {
+        return frequencies;
     }
 
-    ArrayList<String> getWords() {
-        return words;
+    /**
+     * Returns the n-gram statistics of the book, or null if they were not counted.
+     */
+    NgramStatistics getNgrams() {
+        return ngrams;
     }
 }
@@ -0,0 +1,170 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A local disk cache for books fetched from URLs.
+ *
+ * Every URL is stored under the SHA-256 hash of the URL, together with the ETag the server sent and the SHA-256 hash
+ * of the content. A cached book whose content no longer has that hash is downloaded again. A cached book with an ETag
+ * is revalidated with a conditional request, a cached book without one is used as it is. If the server cannot be
+ * reached or answers with an error, the cached copy is used.
+ */
+class BookCache {
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final Path directory;
+
+    BookCache(Path directory) {
+        this.directory = directory;
+    }
+
+    InputStream open(URL url) throws IOException {
+        Files.createDirectories(directory);
+
+        String key = toHex(digest(url.toString().getBytes(StandardCharsets.UTF_8)));
+        Path contentFile = directory.resolve(key + ".txt");
+        Path metadataFile = directory.resolve(key + ".meta");
+        List<String> metadata = readMetadata(metadataFile);
+        boolean isCached = isCachedCopyIntact(contentFile, metadata);
+        String etag = isCached && !metadata.get(0).isEmpty() ? metadata.get(0) : null;
+
+        if (isCached && etag == null) {
+            return Files.newInputStream(contentFile);
+        }
+
+        URLConnection connection;
+        int responseCode;
+
+        try {
+            connection = url.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+
+            connection.connect();
+            responseCode = connection instanceof HttpURLConnection
+                    ? ((HttpURLConnection) connection).getResponseCode()
+                    : HttpURLConnection.HTTP_OK;
+        } catch (IOException e) {
+            if (isCached) {
+                return Files.newInputStream(contentFile);
+            }
+
+            throw e;
+        }
+
+        if (responseCode < 200 || responseCode >= 300) {
+            // Not modified, or an error such as 404 or 503, either way there is nothing to download.
+            ((HttpURLConnection) connection).disconnect();
+
+            if (isCached) {
+                return Files.newInputStream(contentFile);
+            }
+
+            throw new IOException("Server responded with " + responseCode + " for " + connection.getURL());
+        }
+
+        download(connection, contentFile, metadataFile);
+
+        return Files.newInputStream(contentFile);
+    }
+
+    @SuppressWarnings("try")
+    private void download(URLConnection connection, Path contentFile, Path metadataFile) throws IOException {
+        Path temporaryFile = Files.createTempFile(directory, "download", ".tmp");
+        MessageDigest contentDigest = createDigest();
+
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.DOWNLOAD)) {
+            try (InputStream input = new DigestInputStream(connection.getInputStream(), contentDigest);
+                 OutputStream output = Files.newOutputStream(temporaryFile)) {
+                byte[] buffer = new byte[1 << 16];
+                int read;
+
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+
+            Files.move(temporaryFile, contentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        String etag = connection.getHeaderField("ETag");
+        List<String> metadata = Arrays.asList(etag != null ? etag : "", toHex(contentDigest.digest()));
+        Files.write(metadataFile, metadata, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readMetadata(Path metadataFile) throws IOException {
+        if (!Files.exists(metadataFile)) {
+            return Collections.emptyList();
+        }
+
+        return Files.readAllLines(metadataFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that the cached copy exists and still has the content hash it was downloaded with, so that a truncated or
+     * modified copy is never served.
+     */
+    private static boolean isCachedCopyIntact(Path contentFile, List<String> metadata) throws IOException {
+        if (metadata.size() < 2 || !Files.exists(contentFile)) {
+            return false;
+        }
+
+        MessageDigest contentDigest = createDigest();
+
+        try (InputStream input = new DigestInputStream(Files.newInputStream(contentFile), contentDigest)) {
+            byte[] buffer = new byte[1 << 16];
+
+            while (input.read(buffer) != -1) {
+                // The digest is updated as the content is read.
+            }
+        }
+
+        return toHex(contentDigest.digest()).equals(metadata.get(1));
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        return createDigest().digest(bytes);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+}
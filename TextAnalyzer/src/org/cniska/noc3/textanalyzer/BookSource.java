@@ -0,0 +1,14 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Somewhere the text of a book can be read from.
+ */
+interface BookSource {
+
+    String getName();
+
+    Reader openReader() throws IOException;
+}
@@ -0,0 +1,233 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Resolves book locations into book sources. A location can be a URL, a plain or gzip compressed text file, a zip
+ * archive or a directory containing any of those. Compressed books are decompressed while they are read, they are
+ * never extracted to disk.
+ */
+class BookSources {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Charset charset;
+    private final BookCache cache;
+
+    /**
+     * @param charset The character set the books are encoded in
+     * @param cache   An optional cache for books that are fetched from URLs
+     */
+    BookSources(Charset charset, BookCache cache) {
+        this.charset = charset;
+        this.cache = cache;
+    }
+
+    /**
+     * Resolves a location that contains exactly one book.
+     */
+    BookSource resolveBook(String location) throws IOException {
+        if (isUrl(location)) {
+            return new UrlBookSource(new URL(location));
+        }
+
+        Path path = toPath(location);
+
+        if (Files.isDirectory(path) || isZipFile(path)) {
+            throw new IOException("Not a single book: " + location);
+        }
+
+        return new FileBookSource(path);
+    }
+
+    /**
+     * Resolves a location that contains any number of books.
+     */
+    List<BookSource> resolveBooks(String location) throws IOException {
+        List<BookSource> sources = new ArrayList<>();
+
+        if (isUrl(location)) {
+            sources.add(new UrlBookSource(new URL(location)));
+            return sources;
+        }
+
+        Path path = toPath(location);
+
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    addFileBooks(file, sources);
+                }
+            }
+        } else {
+            addFileBooks(path, sources);
+        }
+
+        return sources;
+    }
+
+    private void addFileBooks(Path file, List<BookSource> sources) throws IOException {
+        if (!isZipFile(file)) {
+            sources.add(new FileBookSource(file));
+            return;
+        }
+
+        List<String> entryNames = new ArrayList<>();
+
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+
+                if (!entry.isDirectory()) {
+                    entryNames.add(entry.getName());
+                }
+            }
+        }
+
+        entryNames.sort(null);
+
+        for (String entryName : entryNames) {
+            sources.add(new ZipEntryBookSource(file, entryName));
+        }
+    }
+
+    private static boolean isUrl(String location) {
+        return location.contains("://") && !location.startsWith("file:");
+    }
+
+    private static Path toPath(String location) {
+        return location.startsWith("file:") ? Paths.get(URI.create(location)) : Paths.get(location);
+    }
+
+    private static boolean isZipFile(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".zip");
+    }
+
+    private Reader createReader(InputStream input) {
+        return new BufferedReader(new InputStreamReader(new ByteCountingInputStream(input), charset), BUFFER_SIZE);
+    }
+
+    // Counts the bytes of text that are read, after decompression.
+    private static class ByteCountingInputStream extends FilterInputStream {
+        ByteCountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b != -1) {
+                Metrics.increment(Metrics.Counter.BYTES_READ, 1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+
+            if (read > 0) {
+                Metrics.increment(Metrics.Counter.BYTES_READ, read);
+            }
+
+            return read;
+        }
+    }
+
+    private class FileBookSource implements BookSource {
+        private final Path path;
+
+        FileBookSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getName() {
+            return path.toString();
+        }
+
+        @Override
+        public Reader openReader() throws IOException {
+            InputStream input = Files.newInputStream(path);
+
+            if (path.getFileName().toString().toLowerCase().endsWith(".gz")) {
+                input = new GZIPInputStream(input, BUFFER_SIZE);
+            }
+
+            return createReader(input);
+        }
+    }
+
+    private class ZipEntryBookSource implements BookSource {
+        private final Path path;
+        private final String entryName;
+
+        ZipEntryBookSource(Path path, String entryName) {
+            this.path = path;
+            this.entryName = entryName;
+        }
+
+        @Override
+        public String getName() {
+            return path + "!" + entryName;
+        }
+
+        @Override
+        public Reader openReader() throws IOException {
+            ZipFile zipFile = new ZipFile(path.toFile());
+            ZipEntry entry = zipFile.getEntry(entryName);
+
+            if (entry == null) {
+                zipFile.close();
+                throw new FileNotFoundException(getName());
+            }
+
+            // Closing the reader closes the archive as well.
+            return createReader(new FilterInputStream(zipFile.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zipFile.close();
+                    }
+                }
+            });
+        }
+    }
+
+    private class UrlBookSource implements BookSource {
+        private final URL url;
+
+        UrlBookSource(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public String getName() {
+            return url.toString();
+        }
+
+        @Override
+        public Reader openReader() throws IOException {
+            return createReader(cache != null ? cache.open(url) : url.openStream());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class Corpus {
+    private final List<BookSource> books;
+
+    private Corpus(List<BookSource> books) {
+        this.books = books;
+    }
+
+    /**
+     * Reads the books of a corpus from either a directory or a zip archive, in which case every file in it is a book,
+     * or from a manifest file with one book location per line. Empty lines and lines starting with # are ignored.
+     */
+    static Corpus readFromPath(String path, BookSources sources) throws IOException {
+        Path corpusPath = Paths.get(path);
+        List<BookSource> books;
+
+        if (Files.isDirectory(corpusPath) || path.toLowerCase().endsWith(".zip")) {
+            books = sources.resolveBooks(path);
+        } else {
+            books = new ArrayList<>();
+
+            for (String line : Files.readAllLines(corpusPath, StandardCharsets.UTF_8)) {
+                line = line.trim();
+
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    books.addAll(sources.resolveBooks(line.contains("://") ? line : corpusPath.resolveSibling(line).toString()));
+                }
+            }
+        }
+
+        return new Corpus(books);
+    }
+
+    /**
+     * Reads and tokenizes the books concurrently and merges their words into the given wordlist.
+     *
+     * The books are merged one at a time in the order of the corpus, so the report is the same no matter in which
+     * order the books finish. At most the given number of books are read or waiting to be merged at any time, which
+     * keeps the memory use bounded no matter how large the corpus is.
+     *
+     * Unless the given n-gram statistics are null, the n-grams of every book are counted in statistics of their own
+     * while the book is read, which are then merged into the given ones.
+     */
+    void analyze(Wordlist wordlist, int numberOfThreads, int maximumNumberOfBooksInFlight, NgramStatistics ngrams) {
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        ArrayDeque<Future<Book>> booksInFlight = new ArrayDeque<>();
+        int bookIndex = 0;
+        long numberOfNewWords = 0;
+
+        UI.outputLine("Analyserar " + books.size() + " böcker med ordlistan");
+
+        try {
+            while (bookIndex < books.size() || !booksInFlight.isEmpty()) {
+                while (bookIndex < books.size() && booksInFlight.size() < maximumNumberOfBooksInFlight) {
+                    BookSource source = books.get(bookIndex++);
+                    booksInFlight.addLast(executor.submit(() -> {
+                        Book book = new Book();
+                        book.readWords(source, ngrams != null ? ngrams.createEmptyCopy() : null);
+                        return book;
+                    }));
+                }
+
+                numberOfNewWords += merge(booksInFlight.removeFirst(), wordlist, ngrams);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        UI.outputLine("- Antalet nya ord totalt: " + numberOfNewWords);
+    }
+
+    private static int merge(Future<Book> futureBook, Wordlist wordlist, NgramStatistics ngrams) {
+        Book book;
+
+        try {
+            book = futureBook.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            UI.outputLine("Ett fel uppstod: " + e.getCause().getMessage());
+            return 0;
+        }
+
+        int numberOfNewWords = wordlist.addWordsThatDontExist(book.getWords()).size();
+
+        if (ngrams != null) {
+            ngrams.addAll(book.getNgrams());
+        }
+
+        UI.outputLine("- " + book.getName() + ": " + book.getWords().size() + " olika ord, " + numberOfNewWords + " nya ord");
+
+        return numberOfNewWords;
+    }
+}
@@ -0,0 +1,188 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches a directory for new books and adds their words to a wordlist as they arrive, checkpointing the wordlist at
+ * regular intervals so that a restart continues where it left off.
+ *
+ * A file is only read once it has not changed for a while, so that a book that is still being copied into the
+ * directory is not read half-way. Books that were added while the watcher was not running are found when it starts.
+ */
+class CorpusWatcher {
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final Path directory;
+    private final BookSources sources;
+    private final WordlistCheckpoint checkpoint;
+    private final long checkpointIntervalMillis;
+    private final long quietPeriodMillis;
+
+    // The files that have changed, with the time they last changed, in the order they were noticed.
+    private final Map<Path, Long> changedFiles = new LinkedHashMap<>();
+    private final List<String> booksSinceCheckpoint = new ArrayList<>();
+
+    // Set by another thread to stop the watcher. Interrupting the watcher instead could close a file it is writing.
+    private volatile boolean isStopping = false;
+
+    /**
+     * @param checkpointIntervalMillis How often the added words are checkpointed
+     * @param quietPeriodMillis        How long a file must stay unchanged before it is read
+     */
+    CorpusWatcher(Path directory, BookSources sources, WordlistCheckpoint checkpoint, long checkpointIntervalMillis, long quietPeriodMillis) {
+        this.directory = directory;
+        this.sources = sources;
+        this.checkpoint = checkpoint;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.quietPeriodMillis = quietPeriodMillis;
+    }
+
+    /**
+     * Watches the directory until the watcher is stopped or the thread is interrupted, adding the words of every book
+     * that is not in the given set of books to the wordlist. The wordlist is checkpointed one last time before
+     * returning, with any interrupt cleared.
+     */
+    void watch(Wordlist wordlist, Set<String> books) throws IOException {
+        UI.outputLine("Bevakar katalogen: " + directory);
+
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            addExistingFiles();
+
+            long lastCheckpointTime = System.currentTimeMillis();
+
+            while (!isStopping && !Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            addExistingFiles();
+                        } else {
+                            changedFiles.put(directory.resolve((Path) event.context()), System.currentTimeMillis());
+                        }
+                    }
+
+                    if (!key.reset()) {
+                        UI.outputLine("Katalogen kan inte längre bevakas");
+                        break;
+                    }
+                }
+
+                readQuietFiles(wordlist, books);
+
+                if (System.currentTimeMillis() - lastCheckpointTime >= checkpointIntervalMillis) {
+                    checkpoint(wordlist, books);
+                    lastCheckpointTime = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Interrupting the watcher stops it as well.
+        } catch (ClosedWatchServiceException e) {
+            // The watch service is closed when the watcher is stopped while it is waiting.
+        }
+
+        // An interrupt, if that is what stopped the watcher, has done its job, and the final checkpoint must not be
+        // interrupted half-way since that would close the file it is writing.
+        Thread.interrupted();
+        checkpoint(wordlist, books);
+    }
+
+    /**
+     * Makes the watcher stop once it is done with what it is doing, e.g. reading a book or writing a checkpoint. Can
+     * be called from any thread.
+     */
+    void stop() {
+        isStopping = true;
+    }
+
+    private void addExistingFiles() throws IOException {
+        long now = System.currentTimeMillis();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.sorted().forEach(file -> changedFiles.put(file, now));
+        }
+    }
+
+    private void readQuietFiles(Wordlist wordlist, Set<String> books) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Long>> iterator = changedFiles.entrySet().iterator();
+
+        while (iterator.hasNext() && !isStopping && !Thread.currentThread().isInterrupted()) {
+            Map.Entry<Path, Long> changedFile = iterator.next();
+
+            if (now - changedFile.getValue() < quietPeriodMillis) {
+                continue;
+            }
+
+            iterator.remove();
+
+            if (isBookFile(changedFile.getKey())) {
+                readBooks(changedFile.getKey(), wordlist, books);
+            }
+        }
+    }
+
+    private void readBooks(Path file, Wordlist wordlist, Set<String> books) {
+        List<BookSource> sourcesInFile;
+
+        try {
+            sourcesInFile = sources.resolveBooks(file.toString());
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod: " + file);
+            return;
+        }
+
+        for (BookSource source : sourcesInFile) {
+            if (books.contains(source.getName())) {
+                continue;
+            }
+
+            Book book = new Book();
+
+            try {
+                book.readWords(source);
+            } catch (IOException e) {
+                // The book is tried again the next time the file changes.
+                UI.outputLine("Ett fel uppstod: " + source.getName());
+                continue;
+            }
+
+            int numberOfNewWords = wordlist.addWordsThatDontExist(book.getWords()).size();
+            books.add(source.getName());
+            booksSinceCheckpoint.add(source.getName());
+
+            UI.outputLine("- " + book.getName() + ": " + book.getWords().size() + " olika ord, " + numberOfNewWords + " nya ord");
+        }
+    }
+
+    private void checkpoint(Wordlist wordlist, Set<String> books) {
+        try {
+            checkpoint.append(wordlist, booksSinceCheckpoint);
+            booksSinceCheckpoint.clear();
+
+            if (checkpoint.shouldCompact()) {
+                checkpoint.compact(wordlist, books);
+            }
+        } catch (IOException e) {
+            // The words stay in memory and are part of the next checkpoint instead.
+            UI.outputLine("Ett fel uppstod när kontrollpunkten skrevs");
+        }
+    }
+
+    private static boolean isBookFile(Path file) {
+        String fileName = file.getFileName().toString();
+
+        // Hidden and temporary files are usually books that are still being written under another name.
+        return Files.isRegularFile(file) && !fileName.startsWith(".") && !fileName.endsWith(".tmp") && !fileName.endsWith(".part");
+    }
+}
@@ -0,0 +1,86 @@
+package org.cniska.noc3.textanalyzer;
+
+/**
+ * Estimates how many times every key has been counted in a fixed amount of memory. The estimate is never lower than
+ * the real count, and with the given width and depth it is too high by more than total * e / width only with a
+ * probability of e^-depth.
+ *
+ * Two sketches with the same dimensions can be merged by adding their counters, which gives the same sketch as if
+ * everything had been counted in one.
+ */
+class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long total = 0;
+
+    /**
+     * @param width The number of counters per row, rounded up to a power of two
+     * @param depth The number of rows, i.e. independent hash functions
+     */
+    CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("The width and the depth must be positive");
+        }
+
+        this.width = Integer.bitCount(width) == 1 ? width : Integer.highestOneBit(width) << 1;
+        this.depth = depth;
+        this.counters = new long[this.width * depth];
+    }
+
+    /**
+     * @param key A well mixed 64-bit hash of the item
+     */
+    void add(long key, long count) {
+        int hash = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        int mask = width - 1;
+
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + ((hash + row * step) & mask)] += count;
+        }
+
+        total += count;
+    }
+
+    long estimate(long key) {
+        int hash = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        int mask = width - 1;
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + ((hash + row * step) & mask)]);
+        }
+
+        return estimate;
+    }
+
+    void addAll(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Only sketches with the same dimensions can be merged");
+        }
+
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+
+        total += other.total;
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    long getSizeInBytes() {
+        return counters.length * (long) Long.BYTES;
+    }
+}
@@ -0,0 +1,311 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Removes duplicate words from a stream of words that may be far larger than the available memory.
+ *
+ * Every word is tagged with its position in the stream and spilled to one of a number of bucket files on disk,
+ * chosen by the hash of the word. Since equal words always end up in the same bucket, each bucket can be deduplicated
+ * on its own. A bucket that is too large for the memory budget is partitioned again with a different hash. When the
+ * original order is requested, the deduplicated buckets are combined with a k-way merge on the positions, which gives
+ * exactly the same result as deduplicating the whole stream in memory.
+ */
+class ExternalDeduplicator implements WordSink, Closeable {
+    private static final int NUMBER_OF_BUCKETS = 64;
+    private static final int MAXIMUM_BUFFER_SIZE = 1 << 16;
+    private static final int MAXIMUM_PARTITION_DEPTH = 4;
+
+    // A rough estimate of how much memory deduplicating a bucket takes compared to the size of the bucket file.
+    private static final int MEMORY_PER_BUCKET_BYTE = 2;
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final int bufferSize;
+    private final DataOutputStream[] buckets = new DataOutputStream[NUMBER_OF_BUCKETS];
+    private final Path[] bucketFiles = new Path[NUMBER_OF_BUCKETS];
+    private long numberOfWords = 0;
+
+    /**
+     * @param temporaryDirectory The directory in which the bucket files are created
+     * @param memoryBudget       The approximate number of bytes of memory the deduplication may use
+     */
+    ExternalDeduplicator(Path temporaryDirectory, long memoryBudget) throws IOException {
+        this.directory = Files.createTempDirectory(temporaryDirectory, "dedup");
+        this.memoryBudget = memoryBudget;
+        this.bufferSize = (int) Math.max(1 << 10, Math.min(MAXIMUM_BUFFER_SIZE, memoryBudget / (NUMBER_OF_BUCKETS * 4)));
+
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            bucketFiles[i] = Files.createTempFile(directory, "bucket", ".tmp");
+            buckets[i] = openOutput(bucketFiles[i]);
+        }
+    }
+
+    @Override
+    public void accept(byte[] bytes, int offset, int length) throws IOException {
+        writeRecord(buckets[bucketOf(bytes, offset, length, 0) % NUMBER_OF_BUCKETS], numberOfWords++, bytes, offset, length);
+    }
+
+    /**
+     * Passes every distinct word to the given sink, either in the order they first occurred or grouped by bucket.
+     */
+    void finish(WordSink sink, boolean preserveOrder) throws IOException {
+        for (DataOutputStream bucket : buckets) {
+            bucket.close();
+        }
+
+        Path[] deduplicatedFiles = new Path[NUMBER_OF_BUCKETS];
+
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            deduplicatedFiles[i] = deduplicate(bucketFiles[i], 1);
+
+            if (!preserveOrder) {
+                copyRecords(deduplicatedFiles[i], sink);
+            }
+        }
+
+        if (preserveOrder) {
+            merge(deduplicatedFiles, sink);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataOutputStream bucket : buckets) {
+            bucket.close();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        Files.deleteIfExists(directory);
+    }
+
+    private Path deduplicate(Path bucketFile, int depth) throws IOException {
+        long requiredMemory = Files.size(bucketFile) * MEMORY_PER_BUCKET_BYTE;
+
+        if (requiredMemory > memoryBudget && depth < MAXIMUM_PARTITION_DEPTH) {
+            int numberOfPartitions = (int) Math.min(NUMBER_OF_BUCKETS, requiredMemory / memoryBudget + 1);
+
+            return deduplicateByPartitioning(bucketFile, numberOfPartitions, depth);
+        }
+
+        Path deduplicatedFile = Files.createTempFile(directory, "unique", ".tmp");
+        Vocabulary words = new Vocabulary();
+
+        // The records in a bucket are in stream order, so the first time a word is seen is its first occurrence.
+        try (DataInputStream input = openInput(bucketFile);
+             DataOutputStream output = openOutput(deduplicatedFile)) {
+            Record record = new Record();
+
+            while (record.read(input)) {
+                if (words.add(record.bytes, 0, record.length) >= 0) {
+                    writeRecord(output, record.position, record.bytes, 0, record.length);
+                }
+            }
+        }
+
+        Files.delete(bucketFile);
+
+        return deduplicatedFile;
+    }
+
+    private Path deduplicateByPartitioning(Path bucketFile, int numberOfPartitions, int depth) throws IOException {
+        Path[] partitionFiles = new Path[numberOfPartitions];
+        DataOutputStream[] partitions = new DataOutputStream[numberOfPartitions];
+
+        for (int i = 0; i < numberOfPartitions; i++) {
+            partitionFiles[i] = Files.createTempFile(directory, "bucket", ".tmp");
+            partitions[i] = openOutput(partitionFiles[i]);
+        }
+
+        try (DataInputStream input = openInput(bucketFile)) {
+            Record record = new Record();
+
+            while (record.read(input)) {
+                int partition = bucketOf(record.bytes, 0, record.length, depth) % numberOfPartitions;
+                writeRecord(partitions[partition], record.position, record.bytes, 0, record.length);
+            }
+        } finally {
+            for (DataOutputStream partition : partitions) {
+                partition.close();
+            }
+        }
+
+        Files.delete(bucketFile);
+
+        for (int i = 0; i < numberOfPartitions; i++) {
+            partitionFiles[i] = deduplicate(partitionFiles[i], depth + 1);
+        }
+
+        return mergeToFile(partitionFiles);
+    }
+
+    private Path mergeToFile(Path[] files) throws IOException {
+        Path mergedFile = Files.createTempFile(directory, "unique", ".tmp");
+
+        try (DataOutputStream output = openOutput(mergedFile)) {
+            mergeRecords(files, record -> writeRecord(output, record.position, record.bytes, 0, record.length));
+        }
+
+        return mergedFile;
+    }
+
+    private void merge(Path[] files, WordSink sink) throws IOException {
+        mergeRecords(files, record -> sink.accept(record.bytes, 0, record.length));
+    }
+
+    /**
+     * Merges the given files, each of which is ordered by position, into a single sequence ordered by position. The
+     * files are deleted once they have been merged.
+     */
+    private void mergeRecords(Path[] files, RecordSink sink) throws IOException {
+        DataInputStream[] inputs = new DataInputStream[files.length];
+        Record[] heads = new Record[files.length];
+        int[] heap = new int[files.length];
+        int heapSize = 0;
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                inputs[i] = openInput(files[i]);
+                heads[i] = new Record();
+
+                if (heads[i].read(inputs[i])) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++, heads);
+                }
+            }
+
+            while (heapSize > 0) {
+                int i = heap[0];
+                sink.accept(heads[i]);
+
+                if (!heads[i].read(inputs[i])) {
+                    heap[0] = heap[--heapSize];
+                }
+
+                siftDown(heap, heapSize, heads);
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    private void copyRecords(Path file, WordSink sink) throws IOException {
+        try (DataInputStream input = openInput(file)) {
+            Record record = new Record();
+
+            while (record.read(input)) {
+                sink.accept(record.bytes, 0, record.length);
+            }
+        }
+
+        Files.delete(file);
+    }
+
+    private static void siftUp(int[] heap, int index, Record[] heads) {
+        int parent;
+
+        while (index > 0) {
+            parent = (index - 1) / 2;
+
+            if (heads[heap[parent]].position <= heads[heap[index]].position) {
+                break;
+            }
+
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, Record[] heads) {
+        int index = 0;
+        int child;
+
+        while ((child = index * 2 + 1) < heapSize) {
+            if (child + 1 < heapSize && heads[heap[child + 1]].position < heads[heap[child]].position) {
+                child++;
+            }
+
+            if (heads[heap[index]].position <= heads[heap[child]].position) {
+                break;
+            }
+
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swap = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swap;
+    }
+
+    private static int bucketOf(byte[] bytes, int offset, int length, int depth) {
+        // Mixing in the depth gives an independent hash for every level of partitioning.
+        int hash = Vocabulary.hash(bytes, offset, length) + depth * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+
+        return hash & Integer.MAX_VALUE;
+    }
+
+    private DataOutputStream openOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), bufferSize));
+    }
+
+    private DataInputStream openInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize));
+    }
+
+    private static void writeRecord(DataOutputStream output, long position, byte[] bytes, int offset, int length) throws IOException {
+        output.writeLong(position);
+        output.writeInt(length);
+        output.write(bytes, offset, length);
+    }
+
+    private interface RecordSink {
+
+        void accept(Record record) throws IOException;
+    }
+
+    private static class Record {
+        private long position;
+        private int length;
+        private byte[] bytes = new byte[64];
+
+        boolean read(DataInputStream input) throws IOException {
+            try {
+                position = input.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            length = input.readInt();
+
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+
+            input.readFully(bytes, 0, length);
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An index for finding the known words closest to a word that is not known, e.g. to spot OCR errors and spelling
+ * variants.
+ *
+ * The index follows the symmetric delete approach (SymSpell): every word is stored under every string that can be made
+ * by deleting at most the maximum edit distance of its characters. Two words within that distance of each other always
+ * share at least one such delete, so a query only has to look up its own deletes and check the few candidates found,
+ * instead of comparing the word with every known word. The deletes are only kept as hashes, each together with the id
+ * of its word, in a single sorted array.
+ */
+class FuzzyIndex {
+    private static final int MAXIMUM_SUPPORTED_DISTANCE = 2;
+    private static final int MINIMUM_SPLIT_SIZE = 1 << 8;
+    private static final int NO_DELETE = -1;
+
+    private final Vocabulary words;
+    private final int numberOfWords;
+    private final int maximumDistance;
+
+    // The characters of every word, so that the candidates can be compared without decoding the words over and over.
+    private final char[] characters;
+    private final int[] firstCharacters;
+
+    // The hash of a delete in the upper half and the id of the word in the lower half, in sorted order. Only the first
+    // numberOfEntries are used, the rest of the array is left over from removing duplicates.
+    private final long[] entries;
+    private final int numberOfEntries;
+
+    private FuzzyIndex(Vocabulary words, int maximumDistance) {
+        this.words = words;
+        this.numberOfWords = words.size();
+        this.maximumDistance = maximumDistance;
+
+        StringBuilder builder = new StringBuilder();
+        long numberOfAllEntries = 0;
+        firstCharacters = new int[numberOfWords + 1];
+
+        for (int id = 0; id < numberOfWords; id++) {
+            firstCharacters[id] = builder.length();
+            builder.append(words.getWord(id));
+            numberOfAllEntries += countDeletes(builder.length() - firstCharacters[id], maximumDistance);
+        }
+
+        firstCharacters[numberOfWords] = builder.length();
+        characters = builder.toString().toCharArray();
+
+        if (numberOfAllEntries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many words to index with an edit distance of " + maximumDistance);
+        }
+
+        long[] allEntries = new long[(int) numberOfAllEntries];
+        int[] hashes = new int[16];
+        int position = 0;
+
+        for (int id = 0; id < numberOfWords; id++) {
+            hashes = hashDeletes(characters, firstCharacters[id], firstCharacters[id + 1], maximumDistance, hashes);
+            int numberOfDeletes = (int) countDeletes(firstCharacters[id + 1] - firstCharacters[id], maximumDistance);
+
+            for (int i = 0; i < numberOfDeletes; i++) {
+                allEntries[position++] = ((long) hashes[i] << 32) | id;
+            }
+        }
+
+        Arrays.parallelSort(allEntries);
+
+        // A word can give the same delete more than once, e.g. both ways of deleting one 'a' from "aa".
+        int numberOfUniqueEntries = 0;
+
+        for (int i = 0; i < allEntries.length; i++) {
+            if (i == 0 || allEntries[i] != allEntries[i - 1]) {
+                allEntries[numberOfUniqueEntries++] = allEntries[i];
+            }
+        }
+
+        entries = allEntries;
+        numberOfEntries = numberOfUniqueEntries;
+    }
+
+    /**
+     * Builds an index of the words currently in the given vocabulary. Words added to the vocabulary later are not part
+     * of the index. Throws IllegalArgumentException if the index would not fit in the memory that is left.
+     */
+    static FuzzyIndex build(Vocabulary words, int maximumDistance) {
+        if (maximumDistance < 1 || maximumDistance > MAXIMUM_SUPPORTED_DISTANCE) {
+            throw new IllegalArgumentException("The maximum edit distance must be between 1 and " + MAXIMUM_SUPPORTED_DISTANCE);
+        }
+
+        long requiredBytes = estimatePeakSizeInBytes(words, maximumDistance);
+        Runtime runtime = Runtime.getRuntime();
+        long availableBytes = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+
+        if (requiredBytes > availableBytes) {
+            throw new IllegalArgumentException("Indexing the words needs about " + requiredBytes / (1 << 20) + " MB but only "
+                    + availableBytes / (1 << 20) + " MB is available");
+        }
+
+        return new FuzzyIndex(words, maximumDistance);
+    }
+
+    /**
+     * Estimates the most memory that building an index of the given words uses at any one time. The length of a word in
+     * bytes is used as its number of characters, which is never less, so the estimate errs on the safe side.
+     */
+    private static long estimatePeakSizeInBytes(Vocabulary words, int maximumDistance) {
+        long numberOfEntries = 0;
+        long numberOfCharacters = 0;
+        int length;
+
+        for (int id = 0; id < words.size(); id++) {
+            length = words.getWordLength(id);
+            numberOfCharacters += length;
+            numberOfEntries += countDeletes(length, maximumDistance);
+        }
+
+        // The entries are sorted with Arrays.parallelSort, which needs a buffer as large as the entries themselves, and
+        // the characters are held both by the builder and by the array copied from it.
+        return numberOfEntries * Long.BYTES * 2 + numberOfCharacters * Character.BYTES * 2
+                + (words.size() + 1L) * Integer.BYTES;
+    }
+
+    int getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    int getMaximumDistance() {
+        return maximumDistance;
+    }
+
+    long getSizeInBytes() {
+        return numberOfEntries * (long) Long.BYTES + characters.length * (long) Character.BYTES
+                + firstCharacters.length * (long) Integer.BYTES;
+    }
+
+    String getWord(int id) {
+        return words.getWord(id);
+    }
+
+    /**
+     * Returns the known words closest to the given word, or null if there is no known word within the maximum edit
+     * distance. Deleting, inserting or replacing a character, or swapping two adjacent characters, is one edit each.
+     */
+    Match findNearestWords(String word) {
+        return findNearestWords(word.toCharArray(), new QueryBuffers());
+    }
+
+    /**
+     * Finds the closest known words for every word in the given vocabulary in parallel. The matches are indexed by the
+     * ids of the given vocabulary, with null for the words that have no known word close enough.
+     */
+    Match[] findNearestWords(Vocabulary queries, ForkJoinPool pool) {
+        Match[] matches = new Match[queries.size()];
+
+        pool.invoke(new QueryTask(queries, matches, 0, matches.length));
+
+        return matches;
+    }
+
+    private Match findNearestWords(char[] query, QueryBuffers buffers) {
+        buffers.hashes = hashDeletes(query, 0, query.length, maximumDistance, buffers.hashes);
+        int numberOfDeletes = (int) countDeletes(query.length, maximumDistance);
+        int numberOfCandidates = 0;
+
+        for (int i = 0; i < numberOfDeletes; i++) {
+            int hash = buffers.hashes[i];
+
+            for (int entry = lowerBound((long) hash << 32); entry < numberOfEntries && (int) (entries[entry] >>> 32) == hash; entry++) {
+                if (numberOfCandidates == buffers.candidates.length) {
+                    buffers.candidates = Arrays.copyOf(buffers.candidates, numberOfCandidates * 2);
+                }
+
+                buffers.candidates[numberOfCandidates++] = (int) entries[entry];
+            }
+        }
+
+        // The same word is usually found through several deletes, sorting makes every word appear only once.
+        Arrays.sort(buffers.candidates, 0, numberOfCandidates);
+
+        int bestDistance = maximumDistance + 1;
+        int numberOfMatches = 0;
+        int[] matches = null;
+
+        for (int i = 0; i < numberOfCandidates; i++) {
+            int id = buffers.candidates[i];
+
+            if (i > 0 && id == buffers.candidates[i - 1]) {
+                continue;
+            }
+
+            int distance = distance(query, id, bestDistance, buffers);
+
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                numberOfMatches = 0;
+            }
+
+            if (distance == bestDistance && distance <= maximumDistance) {
+                if (matches == null) {
+                    matches = new int[4];
+                } else if (numberOfMatches == matches.length) {
+                    matches = Arrays.copyOf(matches, numberOfMatches * 2);
+                }
+
+                matches[numberOfMatches++] = id;
+            }
+        }
+
+        return numberOfMatches > 0 ? new Match(bestDistance, Arrays.copyOf(matches, numberOfMatches)) : null;
+    }
+
+    /**
+     * Calculates the optimal string alignment distance between the query and a known word, or any value above the
+     * given limit as soon as it is clear that the distance is above it.
+     */
+    private int distance(char[] query, int id, int limit, QueryBuffers buffers) {
+        int start = firstCharacters[id];
+        int length = firstCharacters[id + 1] - start;
+
+        if (Math.abs(length - query.length) > limit) {
+            return limit + 1;
+        }
+
+        if (buffers.rows[0].length <= length) {
+            for (int i = 0; i < buffers.rows.length; i++) {
+                buffers.rows[i] = new int[length * 2 + 1];
+            }
+        }
+
+        int[] previousPrevious = buffers.rows[0];
+        int[] previous = buffers.rows[1];
+        int[] current = buffers.rows[2];
+
+        for (int j = 0; j <= length; j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= query.length; i++) {
+            current[0] = i;
+            int smallestInRow = i;
+
+            for (int j = 1; j <= length; j++) {
+                int cost = query[i - 1] == characters[start + j - 1] ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+
+                if (i > 1 && j > 1 && query[i - 1] == characters[start + j - 2] && query[i - 2] == characters[start + j - 1]) {
+                    value = Math.min(value, previousPrevious[j - 2] + 1);
+                }
+
+                current[j] = value;
+                smallestInRow = Math.min(smallestInRow, value);
+            }
+
+            if (smallestInRow > limit) {
+                return limit + 1;
+            }
+
+            int[] swap = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[length];
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = numberOfEntries;
+        int middle;
+
+        while (low < high) {
+            middle = (low + high) >>> 1;
+
+            if (entries[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static long countDeletes(int length, int maximumDistance) {
+        long count = 1 + length;
+
+        if (maximumDistance >= 2) {
+            count += (long) length * (length - 1) / 2;
+        }
+
+        return count;
+    }
+
+    /**
+     * Hashes the word itself and every string made by deleting one or (with a distance of two) two of its characters,
+     * in the order counted by countDeletes.
+     */
+    private static int[] hashDeletes(char[] chars, int start, int end, int maximumDistance, int[] hashes) {
+        int length = end - start;
+        int numberOfDeletes = (int) countDeletes(length, maximumDistance);
+
+        if (hashes.length < numberOfDeletes) {
+            hashes = new int[Math.max(numberOfDeletes, hashes.length * 2)];
+        }
+
+        int position = 0;
+        hashes[position++] = hashDelete(chars, start, end, NO_DELETE, NO_DELETE);
+
+        for (int i = start; i < end; i++) {
+            hashes[position++] = hashDelete(chars, start, end, i, NO_DELETE);
+
+            if (maximumDistance >= 2) {
+                for (int j = i + 1; j < end; j++) {
+                    hashes[position++] = hashDelete(chars, start, end, i, j);
+                }
+            }
+        }
+
+        return hashes;
+    }
+
+    private static int hashDelete(char[] chars, int start, int end, int firstDeleted, int secondDeleted) {
+        int hash = 0x811C9DC5;
+
+        for (int i = start; i < end; i++) {
+            if (i != firstDeleted && i != secondDeleted) {
+                hash = (hash ^ chars[i]) * 0x01000193;
+            }
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The known words closest to a word, all at the same edit distance.
+     */
+    static class Match {
+        private final int distance;
+        private final int[] wordIds;
+
+        Match(int distance, int[] wordIds) {
+            this.distance = distance;
+            this.wordIds = wordIds;
+        }
+
+        int getDistance() {
+            return distance;
+        }
+
+        int[] getWordIds() {
+            return wordIds;
+        }
+    }
+
+    // Reused between the queries of one thread, so that a query does not have to allocate anything unless it matches.
+    private static class QueryBuffers {
+        private int[] hashes = new int[64];
+        private int[] candidates = new int[64];
+        private final int[][] rows = {new int[32], new int[32], new int[32]};
+    }
+
+    private class QueryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Vocabulary queries;
+        private final Match[] matches;
+        private final int start;
+        private final int end;
+
+        QueryTask(Vocabulary queries, Match[] matches, int start, int end) {
+            this.queries = queries;
+            this.matches = matches;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > MINIMUM_SPLIT_SIZE) {
+                int middle = start + (end - start) / 2;
+                invokeAll(new QueryTask(queries, matches, start, middle), new QueryTask(queries, matches, middle, end));
+                return;
+            }
+
+            QueryBuffers buffers = new QueryBuffers();
+
+            for (int id = start; id < end; id++) {
+                matches[id] = findNearestWords(queries.getWord(id).toCharArray(), buffers);
+            }
+        }
+    }
+}
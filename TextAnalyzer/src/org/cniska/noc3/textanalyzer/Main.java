@@ -1,10 +1,30 @@
 package org.cniska.noc3.textanalyzer;
 
+import java.util.Arrays;
+
 public class Main {
 
     public static void main(String[] args) {
-        App app = new App();
+        // Pass --suggest first to suggest the nearest known words for the new words of the book.
+        boolean isSuggestingNearestWords = args.length > 0 && args[0].equals("--suggest");
+
+        if (isSuggestingNearestWords) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        App app = new App(isSuggestingNearestWords);
 
-        app.run();
+        // Pass --dedup followed by an output file and the wordlist files to combine them without loading them into
+        // memory, --watch followed by a directory to keep adding the books that arrive in it, or a directory of books or
+        // a manifest file to analyze a whole corpus instead of the single book.
+        if (args.length > 2 && args[0].equals("--dedup")) {
+            app.runDeduplication(args[1], Arrays.asList(args).subList(2, args.length));
+        } else if (args.length > 1 && args[0].equals("--watch")) {
+            app.runWatch(args[1]);
+        } else if (args.length > 0) {
+            app.runCorpus(args[0]);
+        } else {
+            app.run();
+        }
     }
 }
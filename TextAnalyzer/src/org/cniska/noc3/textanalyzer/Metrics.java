@@ -0,0 +1,410 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects timings and counters for the stages of the analysis, so that runs can be compared with each other. The
+ * metrics can be written as a JSON line appended to a file, or as a Prometheus text file.
+ *
+ * Every stage keeps a histogram of its durations in power of two buckets, so recording a timing is a handful of atomic
+ * additions and never allocates anything besides the timer itself.
+ */
+class Metrics {
+    private static final int NUMBER_OF_BUCKETS = 64;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> GARBAGE_COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    enum Stage {
+        READ("read"),
+        DOWNLOAD("download"),
+        TOKENIZE("tokenize"),
+        SHUFFLE("shuffle"),
+        MERGE("merge"),
+        INDEX("index"),
+        DEDUPLICATE("dedup"),
+        WRITE("write");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    enum Counter {
+        BYTES_READ("bytes_read"),
+        BYTES_WRITTEN("bytes_written"),
+        TOKENS("tokens"),
+        DISTINCT_WORDS("distinct_words"),
+        NEW_WORDS("new_words");
+
+        private final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    private static final StageMetrics[] stages = new StageMetrics[Stage.values().length];
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static long garbageCollectionTimeAtReset;
+    private static long garbageCollectionCountAtReset;
+
+    static {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new StageMetrics();
+        }
+
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+
+        garbageCollectionTimeAtReset = getGarbageCollectionTime();
+        garbageCollectionCountAtReset = getGarbageCollectionCount();
+    }
+
+    /**
+     * Starts timing the given stage, the timing is recorded when the timer is closed.
+     */
+    static Timer startTimer(Stage stage) {
+        return new Timer(stage);
+    }
+
+    static void increment(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    static long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    static long getNumberOfTimings(Stage stage) {
+        return stages[stage.ordinal()].count.sum();
+    }
+
+    static long getTotalNanos(Stage stage) {
+        return stages[stage.ordinal()].totalNanos.sum();
+    }
+
+    /**
+     * Clears every timing and counter, e.g. between benchmark iterations.
+     */
+    static synchronized void reset() {
+        for (StageMetrics stage : stages) {
+            stage.reset();
+        }
+
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+
+        garbageCollectionTimeAtReset = getGarbageCollectionTime();
+        garbageCollectionCountAtReset = getGarbageCollectionCount();
+    }
+
+    /**
+     * Appends the metrics as a single JSON object on its own line, which makes the file easy to compare across runs.
+     */
+    static void appendJsonLine(Path path, String runName) throws IOException {
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\"timestamp\":").append(System.currentTimeMillis());
+        json.append(",\"run\":\"").append(escapeJson(runName)).append("\"");
+        json.append(",\"stages\":{");
+
+        boolean isFirst = true;
+
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = stages[stage.ordinal()];
+            long count = metrics.count.sum();
+
+            if (count == 0) {
+                continue;
+            }
+
+            json.append(isFirst ? "" : ",").append("\"").append(stage.getName()).append("\":{");
+            json.append("\"count\":").append(count);
+            json.append(",\"total_ns\":").append(metrics.totalNanos.sum());
+            json.append(",\"max_ns\":").append(metrics.maximumNanos.get());
+            json.append(",\"p50_ns\":").append(metrics.quantile(0.5));
+            json.append(",\"p99_ns\":").append(metrics.quantile(0.99));
+            json.append(",\"allocated_bytes\":").append(metrics.allocatedBytes.sum());
+            json.append(",\"gc_ms\":").append(metrics.garbageCollectionMillis.sum());
+            json.append("}");
+            isFirst = false;
+        }
+
+        json.append("},\"counters\":{");
+        isFirst = true;
+
+        for (Counter counter : Counter.values()) {
+            json.append(isFirst ? "" : ",").append("\"").append(counter.getName()).append("\":").append(getCount(counter));
+            isFirst = false;
+        }
+
+        json.append("},\"gc\":{\"time_ms\":").append(getGarbageCollectionTime() - garbageCollectionTimeAtReset);
+        json.append(",\"collections\":").append(getGarbageCollectionCount() - garbageCollectionCountAtReset);
+        json.append("}}\n");
+
+        createParentDirectories(path);
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format, replacing the file atomically so that a scraper never sees a
+     * half written file.
+     */
+    static void writePrometheusFile(Path path) throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        text.append("# TYPE textanalyzer_stage_duration_seconds histogram\n");
+
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = stages[stage.ordinal()];
+            long count = metrics.count.sum();
+
+            if (count == 0) {
+                continue;
+            }
+
+            String label = "stage=\"" + stage.getName() + "\"";
+            int highestBucket = NUMBER_OF_BUCKETS - 1;
+            long cumulativeCount = 0;
+
+            while (highestBucket > 0 && metrics.buckets.get(highestBucket) == 0) {
+                highestBucket--;
+            }
+
+            for (int bucket = 0; bucket <= highestBucket; bucket++) {
+                cumulativeCount += metrics.buckets.get(bucket);
+
+                if (cumulativeCount > 0) {
+                    text.append("textanalyzer_stage_duration_seconds_bucket{").append(label).append(",le=\"")
+                            .append(formatSeconds(upperBoundOfBucket(bucket))).append("\"} ").append(cumulativeCount).append('\n');
+                }
+            }
+
+            text.append("textanalyzer_stage_duration_seconds_bucket{").append(label).append(",le=\"+Inf\"} ").append(count).append('\n');
+            text.append("textanalyzer_stage_duration_seconds_sum{").append(label).append("} ").append(formatSeconds(metrics.totalNanos.sum())).append('\n');
+            text.append("textanalyzer_stage_duration_seconds_count{").append(label).append("} ").append(count).append('\n');
+        }
+
+        text.append("# TYPE textanalyzer_stage_allocated_bytes_total counter\n");
+
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = stages[stage.ordinal()];
+
+            if (metrics.count.sum() > 0) {
+                text.append("textanalyzer_stage_allocated_bytes_total{stage=\"").append(stage.getName()).append("\"} ")
+                        .append(metrics.allocatedBytes.sum()).append('\n');
+            }
+        }
+
+        for (Counter counter : Counter.values()) {
+            String name = "textanalyzer_" + counter.getName() + "_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(getCount(counter)).append('\n');
+        }
+
+        text.append("# TYPE textanalyzer_gc_time_seconds_total counter\n");
+        text.append("textanalyzer_gc_time_seconds_total ")
+                .append(formatSeconds((getGarbageCollectionTime() - garbageCollectionTimeAtReset) * 1000000L)).append('\n');
+        text.append("# TYPE textanalyzer_gc_collections_total counter\n");
+        text.append("textanalyzer_gc_collections_total ").append(getGarbageCollectionCount() - garbageCollectionCountAtReset).append('\n');
+
+        createParentDirectories(path);
+        Path temporaryFile = path.resolveSibling(path.getFileName() + "." + System.nanoTime() + ".tmp");
+
+        try {
+            Files.write(temporaryFile, text.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW);
+            Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void createParentDirectories(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    private static long upperBoundOfBucket(int bucket) {
+        return bucket == NUMBER_OF_BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder();
+
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < ' ') {
+                escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or -1 if the JVM does not tell.
+     */
+    private static long getAllocatedBytesOfCurrentThread() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    private static long getGarbageCollectionTime() {
+        long time = 0;
+
+        for (GarbageCollectorMXBean collector : GARBAGE_COLLECTORS) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+
+        return time;
+    }
+
+    private static long getGarbageCollectionCount() {
+        long count = 0;
+
+        for (GarbageCollectorMXBean collector : GARBAGE_COLLECTORS) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    /**
+     * A running timing of a stage. The allocations are those of the thread that started the timer, the work a stage
+     * hands over to other threads is not included. The garbage collection time is that of the whole JVM while the stage
+     * was running.
+     */
+    static class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+        private final long startGarbageCollectionTime;
+        private boolean isStopped = false;
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+            this.startAllocatedBytes = getAllocatedBytesOfCurrentThread();
+            this.startGarbageCollectionTime = getGarbageCollectionTime();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stops the timer and records the timing, returning the duration in nanoseconds.
+         */
+        long stop() {
+            long nanos = System.nanoTime() - startNanos;
+
+            if (!isStopped) {
+                long allocatedBytes = getAllocatedBytesOfCurrentThread();
+                stages[stage.ordinal()].record(nanos,
+                        startAllocatedBytes >= 0 && allocatedBytes >= 0 ? allocatedBytes - startAllocatedBytes : 0,
+                        getGarbageCollectionTime() - startGarbageCollectionTime);
+                isStopped = true;
+            }
+
+            return nanos;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    private static class StageMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maximumNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder garbageCollectionMillis = new LongAdder();
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maximumNanos.set(0);
+            allocatedBytes.reset();
+            garbageCollectionMillis.reset();
+
+            for (int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+                buckets.set(bucket, 0);
+            }
+        }
+
+        void record(long nanos, long allocated, long garbageCollectionTime) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            totalNanos.add(nanos);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+            allocatedBytes.add(allocated);
+            garbageCollectionMillis.add(garbageCollectionTime);
+
+            long maximum;
+
+            while (nanos > (maximum = maximumNanos.get()) && !maximumNanos.compareAndSet(maximum, nanos)) {
+                // Another thread recorded a longer timing at the same time, try again.
+            }
+        }
+
+        /**
+         * Returns an upper bound for the given quantile of the durations, accurate to a factor of two.
+         */
+        long quantile(double quantile) {
+            long total = count.sum();
+            long rank = (long) Math.ceil(quantile * total);
+            long cumulativeCount = 0;
+
+            for (int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+                cumulativeCount += buckets.get(bucket);
+
+                if (cumulativeCount >= rank && cumulativeCount > 0) {
+                    return Math.min(upperBoundOfBucket(bucket), maximumNanos.get());
+                }
+            }
+
+            return maximumNanos.get();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts word pairs (bigrams), word triples (trigrams) and words that occur close to each other (co-occurrences) in a
+ * fixed amount of memory, no matter how much text is counted.
+ *
+ * Every kind of n-gram is counted in a Count-Min sketch, which estimates the count of any n-gram, and in a Space-Saving
+ * summary, which keeps track of the most frequent ones. An n-gram is identified by a 64-bit hash of its words, its text
+ * is only kept for the n-grams in the summary. Two statistics with the same settings can be merged, e.g. to combine the
+ * statistics of books that were read in parallel.
+ */
+class NgramStatistics {
+    enum Kind {
+        BIGRAMS,
+        TRIGRAMS,
+        CO_OCCURRENCES
+    }
+
+    private final int coOccurrenceWindow;
+    private final int sketchWidth;
+    private final int sketchDepth;
+    private final int numberOfHeavyHitters;
+    private final CountMinSketch[] sketches = new CountMinSketch[Kind.values().length];
+    private final SpaceSavingSummary[] summaries = new SpaceSavingSummary[Kind.values().length];
+
+    // The most recent words of the text, so that the n-grams continue from one batch of words to the next.
+    private final int windowSize;
+    private final long[] windowHashes;
+    private final Vocabulary[] windowVocabularies;
+    private final int[] windowIds;
+    private long numberOfWords = 0;
+
+    private byte[] label = new byte[64];
+
+    /**
+     * @param coOccurrenceWindow   How many of the following words a word co-occurs with
+     * @param sketchWidth          The number of counters per row of every sketch
+     * @param sketchDepth          The number of rows of every sketch
+     * @param numberOfHeavyHitters The number of most frequent n-grams of every kind to keep track of
+     */
+    NgramStatistics(int coOccurrenceWindow, int sketchWidth, int sketchDepth, int numberOfHeavyHitters) {
+        this.coOccurrenceWindow = coOccurrenceWindow;
+        this.sketchWidth = sketchWidth;
+        this.sketchDepth = sketchDepth;
+        this.numberOfHeavyHitters = numberOfHeavyHitters;
+
+        for (Kind kind : Kind.values()) {
+            sketches[kind.ordinal()] = new CountMinSketch(sketchWidth, sketchDepth);
+            summaries[kind.ordinal()] = new SpaceSavingSummary(numberOfHeavyHitters);
+        }
+
+        this.windowSize = Math.max(3, coOccurrenceWindow + 1);
+        this.windowHashes = new long[windowSize];
+        this.windowVocabularies = new Vocabulary[windowSize];
+        this.windowIds = new int[windowSize];
+    }
+
+    /**
+     * Returns empty statistics with the same settings, which can later be merged into these.
+     */
+    NgramStatistics createEmptyCopy() {
+        return new NgramStatistics(coOccurrenceWindow, sketchWidth, sketchDepth, numberOfHeavyHitters);
+    }
+
+    /**
+     * Counts the n-grams of the next words of the text, continuing from the words that were counted before.
+     *
+     * @param words      The vocabulary the ids of the words refer to
+     * @param wordHashes The 64-bit hash of every word in the vocabulary, by id
+     * @param ids        The ids of the words in the order they occur in the text
+     */
+    void addWords(Vocabulary words, long[] wordHashes, int[] ids, int numberOfIds) {
+        for (int i = 0; i < numberOfIds; i++) {
+            int id = ids[i];
+            long hash = wordHashes[id];
+            int position = (int) (numberOfWords % windowSize);
+
+            windowHashes[position] = hash;
+            windowVocabularies[position] = words;
+            windowIds[position] = id;
+            numberOfWords++;
+
+            if (numberOfWords >= 2) {
+                addNgram(Kind.BIGRAMS, combine(windowHashes[before(1)], hash), 2);
+            }
+
+            if (numberOfWords >= 3) {
+                addNgram(Kind.TRIGRAMS, combine(combine(windowHashes[before(2)], windowHashes[before(1)]), hash), 3);
+            }
+
+            for (int distance = 1; distance <= coOccurrenceWindow && distance < numberOfWords; distance++) {
+                long otherHash = windowHashes[before(distance)];
+
+                if (otherHash != hash) {
+                    // The pair is the same whichever word comes first.
+                    addCoOccurrence(combine(Math.min(hash, otherHash), Math.max(hash, otherHash)), distance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the given statistics, of another text, into these.
+     */
+    void addAll(NgramStatistics other) {
+        if (other.coOccurrenceWindow != coOccurrenceWindow || other.numberOfHeavyHitters != numberOfHeavyHitters) {
+            throw new IllegalArgumentException("Only statistics with the same settings can be merged");
+        }
+
+        for (Kind kind : Kind.values()) {
+            sketches[kind.ordinal()].addAll(other.sketches[kind.ordinal()]);
+            summaries[kind.ordinal()].addAll(other.summaries[kind.ordinal()]);
+        }
+    }
+
+    /**
+     * Returns an estimate of how many times the given words occur as an n-gram of the given kind, which is never lower
+     * than the real count.
+     */
+    long estimate(Kind kind, String... words) {
+        long key = hashWord(words[0]);
+
+        if (kind == Kind.CO_OCCURRENCES) {
+            long otherKey = hashWord(words[1]);
+            key = combine(Math.min(key, otherKey), Math.max(key, otherKey));
+        } else {
+            for (int i = 1; i < words.length; i++) {
+                key = combine(key, hashWord(words[i]));
+            }
+        }
+
+        return sketches[kind.ordinal()].estimate(key);
+    }
+
+    /**
+     * Returns the most frequent n-grams of the given kind, most frequent first. The count of every n-gram is the
+     * lower of the estimates of the summary and the sketch, both of which are never lower than the real count.
+     */
+    List<SpaceSavingSummary.Item> getMostFrequent(Kind kind, int numberOfNgrams) {
+        List<SpaceSavingSummary.Item> items = new ArrayList<>();
+
+        for (SpaceSavingSummary.Item item : summaries[kind.ordinal()].getMostFrequentItems(numberOfNgrams)) {
+            long count = Math.min(item.getCount(), sketches[kind.ordinal()].estimate(item.getKey()));
+            items.add(new SpaceSavingSummary.Item(item.getKey(), item.getLabel(), count, Math.min(item.getError(), count)));
+        }
+
+        items.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+
+        return items;
+    }
+
+    /**
+     * Describes the most frequent n-grams of the given kind with their counts, e.g. for the output.
+     */
+    String describeMostFrequent(Kind kind, int numberOfNgrams) {
+        StringBuilder description = new StringBuilder();
+
+        for (SpaceSavingSummary.Item item : getMostFrequent(kind, numberOfNgrams)) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+
+            description.append(item.getLabel()).append(" (").append(item.getCount()).append(")");
+        }
+
+        return description.toString();
+    }
+
+    long getTotal(Kind kind) {
+        return sketches[kind.ordinal()].getTotal();
+    }
+
+    long getSizeInBytes() {
+        long size = 0;
+
+        for (CountMinSketch sketch : sketches) {
+            size += sketch.getSizeInBytes();
+        }
+
+        return size;
+    }
+
+    /**
+     * Hashes a word into 64 bits for counting its n-grams. The n-grams of the same words always get the same hash, no
+     * matter which vocabulary the words come from.
+     */
+    static long hashWord(byte[] bytes, int offset, int length) {
+        long hash = 0xCBF29CE484222325L;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+        }
+
+        return mix(hash);
+    }
+
+    private static long hashWord(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+        return hashWord(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Counts the n-gram made of the given number of newest words in the window. The text of the n-gram is only put
+     * together if it takes over a counter of the summary.
+     */
+    private void addNgram(Kind kind, long key, int numberOfWordsInNgram) {
+        sketches[kind.ordinal()].add(key, 1);
+        int counter = summaries[kind.ordinal()].add(key, 1);
+
+        if (counter != -1) {
+            int length = 0;
+
+            for (int distance = numberOfWordsInNgram - 1; distance >= 0; distance--) {
+                length = appendWordToLabel(before(distance), length);
+            }
+
+            summaries[kind.ordinal()].setLabel(counter, label, length);
+        }
+    }
+
+    /**
+     * Counts the co-occurrence of the newest word in the window and the word the given distance before it.
+     */
+    private void addCoOccurrence(long key, int distance) {
+        sketches[Kind.CO_OCCURRENCES.ordinal()].add(key, 1);
+        int counter = summaries[Kind.CO_OCCURRENCES.ordinal()].add(key, 1);
+
+        if (counter != -1) {
+            int length = appendWordToLabel(before(distance), 0);
+            length = appendWordToLabel(before(0), length);
+            summaries[Kind.CO_OCCURRENCES.ordinal()].setLabel(counter, label, length);
+        }
+    }
+
+    private int appendWordToLabel(int position, int length) {
+        Vocabulary words = windowVocabularies[position];
+        int id = windowIds[position];
+        int wordLength = words.getWordLength(id);
+
+        if (length + wordLength + 1 > label.length) {
+            byte[] newLabel = new byte[Math.max(length + wordLength + 1, label.length * 2)];
+            System.arraycopy(label, 0, newLabel, 0, length);
+            label = newLabel;
+        }
+
+        if (length > 0) {
+            label[length++] = ' ';
+        }
+
+        return length + words.copyWord(id, label, length);
+    }
+
+    /**
+     * Returns the position in the window of the word the given number of words before the newest one.
+     */
+    private int before(int distance) {
+        return (int) ((numberOfWords - 1 - distance) % windowSize);
+    }
+
+    private static long combine(long hash, long otherHash) {
+        return mix(hash * 0x9E3779B97F4A7C15L + otherHash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
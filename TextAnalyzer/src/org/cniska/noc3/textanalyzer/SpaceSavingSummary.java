@@ -0,0 +1,331 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the most frequent items of a stream with a fixed number of counters (the Space-Saving algorithm). An item that
+ * is not counted yet takes over the counter of the least frequent item, inheriting its count as a possible error, so
+ * every item that occurs more than total / capacity times is guaranteed to be counted.
+ *
+ * The counters are kept in a min-heap, so the least frequent item is always at hand, and are found by key through an
+ * open addressing table. Every counter has a label, the text of the item, which the caller sets when an item takes
+ * over a counter.
+ */
+class SpaceSavingSummary {
+    private final int capacity;
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final byte[][] labels;
+    private final int[] labelLengths;
+    private int size = 0;
+
+    // A min-heap of the counters by count, and the position of every counter in it.
+    private final int[] heap;
+    private final int[] heapPositions;
+
+    // The counter of every key plus one, zero for an empty slot.
+    private final int[] table;
+
+    SpaceSavingSummary(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.labels = new byte[capacity][];
+        this.labelLengths = new int[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        this.table = new int[Integer.highestOneBit(capacity * 4 - 1) << 1];
+    }
+
+    /**
+     * Counts the given item. Returns the counter the item took over if it was not counted before, in which case the
+     * caller has to set the label of the counter, and -1 otherwise.
+     */
+    int add(long key, long count) {
+        int counter = find(key);
+
+        if (counter != -1) {
+            counts[counter] += count;
+            siftDown(heapPositions[counter]);
+            return -1;
+        }
+
+        if (size < capacity) {
+            counter = size++;
+            keys[counter] = key;
+            counts[counter] = count;
+            errors[counter] = 0;
+            heap[counter] = counter;
+            heapPositions[counter] = counter;
+            siftUp(counter);
+        } else {
+            counter = heap[0];
+            remove(keys[counter]);
+            keys[counter] = key;
+            errors[counter] = counts[counter];
+            counts[counter] += count;
+            siftDown(0);
+        }
+
+        insert(key, counter);
+
+        return counter;
+    }
+
+    void setLabel(int counter, byte[] bytes, int length) {
+        if (labels[counter] == null || labels[counter].length < length) {
+            labels[counter] = new byte[Math.max(length, 16)];
+        }
+
+        System.arraycopy(bytes, 0, labels[counter], 0, length);
+        labelLengths[counter] = length;
+    }
+
+    /**
+     * Returns the count of the given item, which is at least the real count, or 0 if it is not counted.
+     */
+    long getCount(long key) {
+        int counter = find(key);
+
+        return counter != -1 ? counts[counter] : 0;
+    }
+
+    long getMinimumCount() {
+        return size == capacity ? counts[heap[0]] : 0;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Merges the given summary into this one, so that the result summarizes both streams (Agarwal et al., Mergeable
+     * Summaries). An item missing from a full summary may still have occurred up to its minimum count there, so that
+     * is added both to its count and its error.
+     */
+    void addAll(SpaceSavingSummary other) {
+        long minimumCount = getMinimumCount();
+        long otherMinimumCount = other.getMinimumCount();
+        int numberOfCandidates = 0;
+        long[] candidateKeys = new long[size + other.size];
+        long[] candidateCounts = new long[candidateKeys.length];
+        long[] candidateErrors = new long[candidateKeys.length];
+        byte[][] candidateLabels = new byte[candidateKeys.length][];
+
+        for (int counter = 0; counter < size; counter++) {
+            int otherCounter = other.find(keys[counter]);
+            candidateKeys[numberOfCandidates] = keys[counter];
+            candidateCounts[numberOfCandidates] = counts[counter] + (otherCounter != -1 ? other.counts[otherCounter] : otherMinimumCount);
+            candidateErrors[numberOfCandidates] = errors[counter] + (otherCounter != -1 ? other.errors[otherCounter] : otherMinimumCount);
+            candidateLabels[numberOfCandidates++] = copyLabel(counter);
+        }
+
+        for (int otherCounter = 0; otherCounter < other.size; otherCounter++) {
+            if (find(other.keys[otherCounter]) == -1) {
+                candidateKeys[numberOfCandidates] = other.keys[otherCounter];
+                candidateCounts[numberOfCandidates] = other.counts[otherCounter] + minimumCount;
+                candidateErrors[numberOfCandidates] = other.errors[otherCounter] + minimumCount;
+                candidateLabels[numberOfCandidates++] = other.copyLabel(otherCounter);
+            }
+        }
+
+        Integer[] order = new Integer[numberOfCandidates];
+
+        for (int i = 0; i < numberOfCandidates; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(candidateCounts[b], candidateCounts[a]));
+
+        size = 0;
+        Arrays.fill(table, 0);
+
+        for (int i = 0; i < Math.min(capacity, numberOfCandidates); i++) {
+            int candidate = order[i];
+            int counter = size++;
+            keys[counter] = candidateKeys[candidate];
+            counts[counter] = candidateCounts[candidate];
+            errors[counter] = candidateErrors[candidate];
+            heap[counter] = counter;
+            heapPositions[counter] = counter;
+            siftUp(counter);
+            insert(keys[counter], counter);
+            setLabel(counter, candidateLabels[candidate], candidateLabels[candidate].length);
+        }
+    }
+
+    /**
+     * Returns the most frequent items, most frequent first.
+     */
+    List<Item> getMostFrequentItems(int numberOfItems) {
+        Integer[] order = new Integer[size];
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        List<Item> items = new ArrayList<>();
+
+        for (int i = 0; i < Math.min(numberOfItems, size); i++) {
+            int counter = order[i];
+            items.add(new Item(keys[counter], new String(copyLabel(counter), StandardCharsets.UTF_8), counts[counter], errors[counter]));
+        }
+
+        return items;
+    }
+
+    private byte[] copyLabel(int counter) {
+        return labels[counter] != null ? Arrays.copyOf(labels[counter], labelLengths[counter]) : new byte[0];
+    }
+
+    private int find(long key) {
+        int mask = table.length - 1;
+        int slot = mix(key) & mask;
+        int counter;
+
+        while ((counter = table[slot] - 1) != -1) {
+            if (keys[counter] == key) {
+                return counter;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void insert(long key, int counter) {
+        int mask = table.length - 1;
+        int slot = mix(key) & mask;
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = counter + 1;
+    }
+
+    /**
+     * Removes a key from the table, moving back the keys after it that would otherwise no longer be found.
+     */
+    private void remove(long key) {
+        int mask = table.length - 1;
+        int slot = mix(key) & mask;
+
+        while (keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        int next = slot;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            if (table[next] == 0) {
+                break;
+            }
+
+            int home = mix(keys[table[next] - 1]) & mask;
+
+            // The key at next can fill the hole if its home slot is not between the hole and next (cyclically).
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+        }
+
+        table[slot] = 0;
+    }
+
+    private static int mix(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private void siftUp(int position) {
+        int parent;
+
+        while (position > 0) {
+            parent = (position - 1) / 2;
+
+            if (counts[heap[parent]] <= counts[heap[position]]) {
+                break;
+            }
+
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        int child;
+
+        while ((child = position * 2 + 1) < size) {
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+
+            if (counts[heap[position]] <= counts[heap[child]]) {
+                break;
+            }
+
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int swap = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swap;
+        heapPositions[heap[i]] = i;
+        heapPositions[heap[j]] = j;
+    }
+
+    static class Item {
+        private final long key;
+        private final String label;
+        private final long count;
+        private final long error;
+
+        Item(long key, String label, long count, long error) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.error = error;
+        }
+
+        long getKey() {
+            return key;
+        }
+
+        String getLabel() {
+            return label;
+        }
+
+        /**
+         * Returns the count of the item, which is at least the real count and at most the error more than it.
+         */
+        long getCount() {
+            return count;
+        }
+
+        long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+class Tokenizer {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int MINIMUM_SPLIT_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int maximumNumberOfChunksInFlight;
+
+    Tokenizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    Tokenizer(ForkJoinPool pool) {
+        this.pool = pool;
+        this.maximumNumberOfChunksInFlight = pool.getParallelism() * 2;
+    }
+
+    static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || c == 'å' || c == 'ä' || c == 'ö' || c == 'Å' || c == 'Ä' || c == 'Ö';
+    }
+
+    static boolean isSeparator(char c) {
+        return c == ' ' || c == '\n' || c == '\r';
+    }
+
+    static char toLowerCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+
+        switch (c) {
+            case 'Å':
+                return 'å';
+            case 'Ä':
+                return 'ä';
+            case 'Ö':
+                return 'ö';
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * Reads the given text chunk by chunk and counts every word in the given frequencies, adding the words in the order
+     * they first occur. Only the chunks that are currently being tokenized are kept in memory.
+     */
+    void tokenize(Reader reader, WordFrequencies frequencies) throws IOException {
+        tokenize(reader, frequencies, null);
+    }
+
+    /**
+     * Tokenizes the text like above and also counts its n-grams in the given statistics, unless they are null. The
+     * chunks are still tokenized in parallel, but their words are passed to the statistics in the order of the text,
+     * so no n-gram is lost where two chunks meet.
+     */
+    void tokenize(Reader reader, WordFrequencies frequencies, NgramStatistics ngrams) throws IOException {
+        ArrayDeque<ForkJoinTask<TokenizedChunk>> chunksInFlight = new ArrayDeque<>();
+        boolean isRecordingWords = ngrams != null;
+        char[] buffer = new char[CHUNK_SIZE];
+        int length = 0;
+        int read;
+
+        while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+
+            if (length < buffer.length) {
+                continue;
+            }
+
+            // Cut the chunk after the last separator so that no word is split between two chunks. A chunk without
+            // any separator at all is cut anyway, there is not much else we can do with it.
+            int end = lastSeparatorBefore(buffer, 0, length);
+            int chunkLength = end > 0 ? end : length;
+            char[] nextBuffer = new char[CHUNK_SIZE];
+            System.arraycopy(buffer, chunkLength, nextBuffer, 0, length - chunkLength);
+
+            if (chunksInFlight.size() == maximumNumberOfChunksInFlight) {
+                addChunk(chunksInFlight.removeFirst().join(), frequencies, ngrams);
+            }
+
+            chunksInFlight.addLast(pool.submit(new ChunkTask(buffer, 0, chunkLength, isRecordingWords)));
+            length -= chunkLength;
+            buffer = nextBuffer;
+        }
+
+        if (length > 0) {
+            chunksInFlight.addLast(pool.submit(new ChunkTask(buffer, 0, length, isRecordingWords)));
+        }
+
+        while (!chunksInFlight.isEmpty()) {
+            addChunk(chunksInFlight.removeFirst().join(), frequencies, ngrams);
+        }
+    }
+
+    private static void addChunk(TokenizedChunk chunk, WordFrequencies frequencies, NgramStatistics ngrams) {
+        frequencies.addAll(chunk.frequencies);
+
+        if (ngrams != null) {
+            for (WordSequence sequence : chunk.sequences) {
+                ngrams.addWords(sequence.words, sequence.wordHashes, sequence.ids, sequence.numberOfIds);
+            }
+        }
+    }
+
+    private static int lastSeparatorBefore(char[] chars, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (isSeparator(chars[i])) {
+                return i + 1;
+            }
+        }
+
+        return start;
+    }
+
+    /**
+     * The words of a chunk of text, and when n-grams are counted also the order of the words. A chunk that was split
+     * has one sequence per part, since the ids of every part refer to the vocabulary of that part.
+     */
+    private static class TokenizedChunk {
+        private final WordFrequencies frequencies;
+        private final List<WordSequence> sequences;
+
+        TokenizedChunk(WordFrequencies frequencies, List<WordSequence> sequences) {
+            this.frequencies = frequencies;
+            this.sequences = sequences;
+        }
+    }
+
+    private static class WordSequence {
+        private final Vocabulary words;
+        private final long[] wordHashes;
+        private final int[] ids;
+        private final int numberOfIds;
+
+        WordSequence(Vocabulary words, long[] wordHashes, int[] ids, int numberOfIds) {
+            this.words = words;
+            this.wordHashes = wordHashes;
+            this.ids = ids;
+            this.numberOfIds = numberOfIds;
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<TokenizedChunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final char[] chars;
+        private final int start;
+        private final int end;
+        private final boolean isRecordingWords;
+
+        // The ids of the words in the order they occur, only when the words are recorded.
+        private int[] ids;
+        private int numberOfIds = 0;
+
+        ChunkTask(char[] chars, int start, int end, boolean isRecordingWords) {
+            this.chars = chars;
+            this.start = start;
+            this.end = end;
+            this.isRecordingWords = isRecordingWords;
+        }
+
+        @Override
+        protected TokenizedChunk compute() {
+            if (end - start > MINIMUM_SPLIT_SIZE) {
+                int middle = lastSeparatorBefore(chars, start, start + (end - start) / 2);
+
+                if (middle > start) {
+                    ChunkTask left = new ChunkTask(chars, start, middle, isRecordingWords);
+                    ChunkTask right = new ChunkTask(chars, middle, end, isRecordingWords);
+                    right.fork();
+                    TokenizedChunk chunk = left.compute();
+                    TokenizedChunk rightChunk = right.join();
+
+                    // The ids of the left part stay valid, since adding words to a vocabulary never changes an id.
+                    chunk.frequencies.addAll(rightChunk.frequencies);
+                    chunk.sequences.addAll(rightChunk.sequences);
+                    return chunk;
+                }
+            }
+
+            return tokenize();
+        }
+
+        private TokenizedChunk tokenize() {
+            WordFrequencies frequencies = new WordFrequencies();
+            List<WordSequence> sequences = new ArrayList<>();
+            ids = isRecordingWords ? new int[1 << 10] : null;
+            byte[] word = new byte[64];
+            int wordLength = 0;
+            char c;
+
+            // Every letter is lower cased and encoded as UTF-8 straight into a reusable buffer, from where the word is
+            // only copied into the vocabulary the first time it is seen. Anything that is not a letter or a
+            // separator is dropped.
+            for (int i = start; i < end; i++) {
+                c = chars[i];
+
+                if (isLetter(c)) {
+                    if (wordLength + 2 > word.length) {
+                        word = Arrays.copyOf(word, word.length * 2);
+                    }
+
+                    wordLength = encodeLetter(toLowerCase(c), word, wordLength);
+                } else if (isSeparator(c)) {
+                    addWord(frequencies, word, wordLength);
+                    wordLength = 0;
+                }
+            }
+
+            addWord(frequencies, word, wordLength);
+
+            if (isRecordingWords) {
+                sequences.add(new WordSequence(frequencies.getWords(), hashWords(frequencies.getWords(), word), ids, numberOfIds));
+            }
+
+            return new TokenizedChunk(frequencies, sequences);
+        }
+
+        private static long[] hashWords(Vocabulary words, byte[] buffer) {
+            long[] hashes = new long[words.size()];
+
+            for (int id = 0; id < words.size(); id++) {
+                if (words.getWordLength(id) > buffer.length) {
+                    buffer = new byte[words.getWordLength(id)];
+                }
+
+                hashes[id] = NgramStatistics.hashWord(buffer, 0, words.copyWord(id, buffer, 0));
+            }
+
+            return hashes;
+        }
+
+        private static int encodeLetter(char c, byte[] target, int position) {
+            if (c < 0x80) {
+                target[position++] = (byte) c;
+            } else {
+                target[position++] = (byte) (0xC0 | (c >>> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+
+            return position;
+        }
+
+        private void addWord(WordFrequencies frequencies, byte[] word, int wordLength) {
+            if (wordLength == 0) {
+                return;
+            }
+
+            int id = frequencies.add(word, 0, wordLength);
+
+            if (isRecordingWords) {
+                if (numberOfIds == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+
+                ids[numberOfIds++] = id;
+            }
+        }
+    }
+}
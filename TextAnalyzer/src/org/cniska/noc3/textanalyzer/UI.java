@@ -1,8 +1,15 @@
 package org.cniska.noc3.textanalyzer;
 
 class UI {
+    private static boolean isOutputEnabled = true;
 
     static void outputLine(String text) {
-        System.out.println(text);
+        if (isOutputEnabled) {
+            System.out.println(text);
+        }
+    }
+
+    static void setOutputEnabled(boolean isEnabled) {
+        isOutputEnabled = isEnabled;
     }
 }
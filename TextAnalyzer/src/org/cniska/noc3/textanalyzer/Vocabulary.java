@@ -0,0 +1,342 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A set of distinct words that keeps its insertion order without creating an object per word.
+ *
+ * The UTF-8 bytes of the words are packed into large byte array pages and every word is identified by an int id that
+ * is assigned in insertion order. Lookups go through a primitive open addressing hash table of ids. The order in
+ * which the words are iterated is kept separately from the ids, so shuffling the words leaves the ids untouched.
+ */
+class Vocabulary {
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+    private static final int MAXIMUM_NUMBER_OF_PAGES = 1 << (31 - PAGE_SHIFT);
+    private static final int INITIAL_PAGE_SIZE = 1 << 12;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private byte[][] pages = new byte[1][];
+    private int numberOfPages = 0;
+    private int pagePosition = PAGE_SIZE;
+
+    private int[] addresses = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Adds the given UTF-8 encoded word unless it already exists.
+     *
+     * @return The id of the added word, or -(id + 1) of the existing word if it was already in the vocabulary
+     */
+    int add(byte[] bytes, int offset, int length) {
+        return add(bytes, offset, length, hash(bytes, offset, length), false);
+    }
+
+    int add(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+        return add(bytes, 0, bytes.length);
+    }
+
+    private int add(byte[] bytes, int offset, int length, int hash, boolean isKnownToBeNew) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int id;
+
+        while ((id = table[slot] - 1) != -1) {
+            if (!isKnownToBeNew && hashes[id] == hash && equalsWord(id, bytes, offset, length)) {
+                return -(id + 1);
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        id = size;
+        ensureCapacity(size + 1);
+        addresses[id] = store(bytes, offset, length);
+        lengths[id] = length;
+        hashes[id] = hash;
+        order[id] = id;
+        table[slot] = id + 1;
+        size++;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        return id;
+    }
+
+    /**
+     * Adds the word with the given id in another vocabulary unless it already exists.
+     *
+     * @return The id of the added word, or -(id + 1) of the existing word if it was already in the vocabulary
+     */
+    int add(Vocabulary other, int otherId) {
+        int address = other.addresses[otherId];
+
+        return add(other.pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, other.lengths[otherId], other.hashes[otherId], false);
+    }
+
+    /**
+     * Adds the word with the given id in another vocabulary without comparing it to the existing words. The caller
+     * must know that the word does not exist yet, e.g. because a Bloom filter said so.
+     *
+     * @return The id of the added word
+     */
+    int addNew(Vocabulary other, int otherId) {
+        int address = other.addresses[otherId];
+
+        return add(other.pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, other.lengths[otherId], other.hashes[otherId], true);
+    }
+
+    /**
+     * Adds every word in the given vocabulary, in its iteration order, that does not exist in this vocabulary.
+     *
+     * @param target An optional vocabulary that receives the words that were added
+     * @return The number of words that were added
+     */
+    int addAll(Vocabulary other, Vocabulary target) {
+        int numberOfAddedWords = 0;
+        int otherId;
+
+        for (int position = 0; position < other.size; position++) {
+            otherId = other.order[position];
+
+            if (add(other, otherId) >= 0) {
+                numberOfAddedWords++;
+
+                if (target != null) {
+                    target.add(other, otherId);
+                }
+            }
+        }
+
+        return numberOfAddedWords;
+    }
+
+    int indexOf(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int id;
+
+        while ((id = table[slot] - 1) != -1) {
+            if (hashes[id] == hash && equalsWord(id, bytes, offset, length)) {
+                return id;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    boolean contains(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+        return indexOf(bytes, 0, bytes.length) != -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getIdAt(int position) {
+        return order[position];
+    }
+
+    String getWordAt(int position) {
+        return getWord(order[position]);
+    }
+
+    String getWord(int id) {
+        int address = addresses[id];
+
+        return new String(pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, lengths[id], StandardCharsets.UTF_8);
+    }
+
+    int getHash(int id) {
+        return hashes[id];
+    }
+
+    int getWordLength(int id) {
+        return lengths[id];
+    }
+
+    int copyWord(int id, byte[] target, int targetOffset) {
+        int address = addresses[id];
+        System.arraycopy(pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, target, targetOffset, lengths[id]);
+
+        return lengths[id];
+    }
+
+    void writeWord(int id, OutputStream output) throws IOException {
+        int address = addresses[id];
+        output.write(pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, lengths[id]);
+    }
+
+    void shuffle(Random random) {
+        int swap;
+
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * Returns the ids of the words sorted by their UTF-8 bytes, which is the order of a binary wordlist. The order of
+     * the vocabulary itself is left as it is.
+     */
+    int[] getIdsInSortedOrder() {
+        int[] ids = new int[size];
+        int[] buffer = new int[size];
+
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+
+        // A bottom-up merge sort, since the ids are primitives and the comparison needs the vocabulary.
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += width * 2) {
+                int middle = Math.min(low + width, size);
+                int high = Math.min(low + width * 2, size);
+                int left = low, right = middle, target = low;
+
+                while (left < middle && right < high) {
+                    buffer[target++] = compareWords(ids[left], ids[right]) <= 0 ? ids[left++] : ids[right++];
+                }
+
+                while (left < middle) {
+                    buffer[target++] = ids[left++];
+                }
+
+                while (right < high) {
+                    buffer[target++] = ids[right++];
+                }
+            }
+
+            int[] swap = ids;
+            ids = buffer;
+            buffer = swap;
+        }
+
+        return ids;
+    }
+
+    private int compareWords(int id, int otherId) {
+        int address = addresses[id], otherAddress = addresses[otherId];
+        byte[] page = pages[address >>> PAGE_SHIFT], otherPage = pages[otherAddress >>> PAGE_SHIFT];
+        int offset = address & OFFSET_MASK, otherOffset = otherAddress & OFFSET_MASK;
+        int length = Math.min(lengths[id], lengths[otherId]);
+
+        for (int i = 0; i < length; i++) {
+            int comparison = (page[offset + i] & 0xFF) - (otherPage[otherOffset + i] & 0xFF);
+
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return lengths[id] - lengths[otherId];
+    }
+
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811C9DC5;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean equalsWord(int id, byte[] bytes, int offset, int length) {
+        if (lengths[id] != length) {
+            return false;
+        }
+
+        int address = addresses[id];
+        byte[] page = pages[address >>> PAGE_SHIFT];
+        int pageOffset = address & OFFSET_MASK;
+
+        for (int i = 0; i < length; i++) {
+            if (page[pageOffset + i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int store(byte[] bytes, int offset, int length) {
+        // A word never spans two pages. Words that are longer than a page get a page of their own.
+        if (pagePosition + length > PAGE_SIZE || length > PAGE_SIZE) {
+            if (numberOfPages == MAXIMUM_NUMBER_OF_PAGES) {
+                throw new IllegalStateException("The vocabulary is full");
+            }
+
+            if (numberOfPages == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+            }
+
+            pages[numberOfPages++] = new byte[Math.max(INITIAL_PAGE_SIZE, length)];
+            pagePosition = 0;
+        }
+
+        byte[] page = pages[numberOfPages - 1];
+
+        // Pages start out small and grow up to the full page size, so that small vocabularies stay small.
+        if (pagePosition + length > page.length) {
+            page = Arrays.copyOf(page, Math.min(PAGE_SIZE, Math.max(page.length * 2, pagePosition + length)));
+            pages[numberOfPages - 1] = page;
+        }
+
+        System.arraycopy(bytes, offset, page, pagePosition, length);
+        int address = ((numberOfPages - 1) << PAGE_SHIFT) | pagePosition;
+        pagePosition += length;
+
+        return address;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > addresses.length) {
+            int newCapacity = Math.max(capacity, addresses.length * 2);
+            addresses = Arrays.copyOf(addresses, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            hashes = Arrays.copyOf(hashes, newCapacity);
+            order = Arrays.copyOf(order, newCapacity);
+        }
+    }
+
+    private void rehash(int tableSize) {
+        int[] newTable = new int[tableSize];
+        int mask = tableSize - 1;
+        int slot;
+
+        for (int id = 0; id < size; id++) {
+            slot = hashes[id] & mask;
+
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            newTable[slot] = id + 1;
+        }
+
+        table = newTable;
+    }
+}
@@ -0,0 +1,411 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal acyclic finite state automaton that accepts exactly the words of a wordlist.
+ *
+ * Words that share a prefix share the states of that prefix, and since the automaton is minimal words that share a
+ * suffix share those states as well, which makes it far smaller than the words themselves. The automaton works on the
+ * UTF-8 bytes of the words, so the words come out in the same order as in a sorted binary wordlist. Membership and
+ * finding the words with a given prefix take time proportional to the length of the key (plus the number of words
+ * found).
+ *
+ * The states are stored in primitive arrays: every state has a range of arcs, and every arc has a label and a target
+ * state. The automaton is built with the incremental algorithm for sorted input by Daciuk et al.
+ */
+class WordAutomaton {
+    private final int[] firstArcs;
+    private final boolean[] isFinal;
+    private final byte[] arcLabels;
+    private final int[] arcTargets;
+    private final int rootState;
+    private final int numberOfWords;
+
+    private WordAutomaton(int[] firstArcs, boolean[] isFinal, byte[] arcLabels, int[] arcTargets, int rootState, int numberOfWords) {
+        this.firstArcs = firstArcs;
+        this.isFinal = isFinal;
+        this.arcLabels = arcLabels;
+        this.arcTargets = arcTargets;
+        this.rootState = rootState;
+        this.numberOfWords = numberOfWords;
+    }
+
+    int getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    int getNumberOfStates() {
+        return isFinal.length;
+    }
+
+    int getNumberOfArcs() {
+        return arcLabels.length;
+    }
+
+    boolean contains(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int state = walk(bytes);
+
+        return state != -1 && isFinal[state];
+    }
+
+    /**
+     * Passes every word to the given sink in sorted order.
+     */
+    void forEachWord(WordSink sink) throws IOException {
+        forEachWordInRange(null, null, sink);
+    }
+
+    /**
+     * Passes every word that starts with the given prefix to the given sink in sorted order.
+     */
+    void forEachWordWithPrefix(String prefix, WordSink sink) throws IOException {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int state = walk(bytes);
+
+        if (state != -1) {
+            byte[] word = Arrays.copyOf(bytes, Math.max(64, bytes.length * 2));
+            visit(state, word, bytes.length, null, false, null, false, sink);
+        }
+    }
+
+    /**
+     * Passes every word between the given bounds to the given sink in sorted order.
+     *
+     * @param from The first word to include, or null to start from the first word
+     * @param to   The word to stop before, or null to continue to the last word
+     */
+    void forEachWordInRange(String from, String to, WordSink sink) throws IOException {
+        byte[] lowerBound = from != null ? from.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] upperBound = to != null ? to.getBytes(StandardCharsets.UTF_8) : null;
+
+        visit(rootState, new byte[64], 0, lowerBound, lowerBound != null, upperBound, upperBound != null, sink);
+    }
+
+    private int walk(byte[] bytes) {
+        int state = rootState;
+
+        for (byte label : bytes) {
+            int arc = findArc(state, label);
+
+            if (arc == -1) {
+                return -1;
+            }
+
+            state = arcTargets[arc];
+        }
+
+        return state;
+    }
+
+    private int findArc(int state, byte label) {
+        int low = firstArcs[state];
+        int high = firstArcs[state + 1] - 1;
+        int middle, comparison;
+
+        while (low <= high) {
+            middle = (low + high) >>> 1;
+            comparison = (arcLabels[middle] & 0xFF) - (label & 0xFF);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Visits the words below the given state in sorted order. While the path so far equals the start of a bound, the
+     * bound is "tight" and the labels of the arcs have to be checked against it, otherwise the whole subtree is inside
+     * the range. The depth of the recursion is bounded by the length of the longest word.
+     */
+    private void visit(int state, byte[] word, int length, byte[] lowerBound, boolean isLowerBoundTight,
+                       byte[] upperBound, boolean isUpperBoundTight, WordSink sink) throws IOException {
+        // A word that equals the upper bound, or is a prefix of it, sorts before it. A word is below the lower bound
+        // when it is a proper prefix of it.
+        boolean isBelowLowerBound = isLowerBoundTight && length < lowerBound.length;
+        boolean isAtUpperBound = isUpperBoundTight && length == upperBound.length;
+
+        if (isFinal[state] && !isBelowLowerBound && !isAtUpperBound) {
+            sink.accept(word, 0, length);
+        }
+
+        if (isAtUpperBound) {
+            return;
+        }
+
+        if (length == word.length) {
+            word = Arrays.copyOf(word, word.length * 2);
+        }
+
+        for (int arc = firstArcs[state]; arc < firstArcs[state + 1]; arc++) {
+            int label = arcLabels[arc] & 0xFF;
+            boolean isLabelOnLowerBound = false;
+            boolean isLabelOnUpperBound = false;
+
+            if (isLowerBoundTight && length < lowerBound.length) {
+                int lowerLabel = lowerBound[length] & 0xFF;
+
+                if (label < lowerLabel) {
+                    continue;
+                }
+
+                isLabelOnLowerBound = label == lowerLabel;
+            }
+
+            if (isUpperBoundTight) {
+                int upperLabel = upperBound[length] & 0xFF;
+
+                if (label > upperLabel) {
+                    return;
+                }
+
+                isLabelOnUpperBound = label == upperLabel;
+            }
+
+            word[length] = arcLabels[arc];
+            visit(arcTargets[arc], word, length + 1, lowerBound, isLabelOnLowerBound, upperBound, isLabelOnUpperBound, sink);
+        }
+    }
+
+    /**
+     * Builds an automaton from words that are added in sorted order.
+     */
+    static class Builder implements WordSink {
+        private static final int INITIAL_CAPACITY = 1 << 10;
+
+        // The frozen states, which never change once they have been added.
+        private int[] firstArcs = new int[INITIAL_CAPACITY + 1];
+        private boolean[] isFinal = new boolean[INITIAL_CAPACITY];
+        private int numberOfStates = 0;
+        private byte[] arcLabels = new byte[INITIAL_CAPACITY];
+        private int[] arcTargets = new int[INITIAL_CAPACITY];
+        private int numberOfArcs = 0;
+
+        // An open addressing table of the frozen states, used to find an equivalent state before adding a new one.
+        private int[] register = new int[INITIAL_CAPACITY * 2];
+
+        // The states along the path of the previous word, which may still get new arcs.
+        private PendingState[] path = {new PendingState()};
+        private byte[] previousWord = new byte[64];
+        private int previousWordLength = 0;
+        private int numberOfWords = 0;
+        private boolean isBuilt = false;
+
+        @Override
+        public void accept(byte[] bytes, int offset, int length) {
+            if (isBuilt) {
+                throw new IllegalStateException("The automaton has already been built");
+            }
+
+            int commonPrefixLength = 0;
+            int maximumCommonPrefixLength = Math.min(length, previousWordLength);
+
+            while (commonPrefixLength < maximumCommonPrefixLength
+                    && bytes[offset + commonPrefixLength] == previousWord[commonPrefixLength]) {
+                commonPrefixLength++;
+            }
+
+            if (numberOfWords > 0) {
+                if (commonPrefixLength == length && commonPrefixLength == previousWordLength) {
+                    // The same word twice in a row is simply ignored.
+                    return;
+                }
+
+                if (commonPrefixLength == length
+                        || (commonPrefixLength < previousWordLength
+                        && (bytes[offset + commonPrefixLength] & 0xFF) < (previousWord[commonPrefixLength] & 0xFF))) {
+                    throw new IllegalArgumentException("The words must be added in sorted order");
+                }
+            }
+
+            // Everything below the common prefix of the previous word is complete and can be frozen.
+            freezePath(commonPrefixLength);
+
+            if (length >= path.length) {
+                int oldLength = path.length;
+                path = Arrays.copyOf(path, Math.max(length + 1, path.length * 2));
+
+                for (int i = oldLength; i < path.length; i++) {
+                    path[i] = new PendingState();
+                }
+            }
+
+            for (int depth = commonPrefixLength; depth < length; depth++) {
+                path[depth + 1].clear();
+                path[depth].addArc(bytes[offset + depth]);
+            }
+
+            path[length].isFinal = true;
+
+            if (length > previousWord.length) {
+                previousWord = new byte[Math.max(length, previousWord.length * 2)];
+            }
+
+            System.arraycopy(bytes, offset, previousWord, 0, length);
+            previousWordLength = length;
+            numberOfWords++;
+        }
+
+        WordAutomaton build() {
+            freezePath(0);
+            int rootState = freeze(path[0]);
+            isBuilt = true;
+
+            return new WordAutomaton(
+                    Arrays.copyOf(firstArcs, numberOfStates + 1),
+                    Arrays.copyOf(isFinal, numberOfStates),
+                    Arrays.copyOf(arcLabels, numberOfArcs),
+                    Arrays.copyOf(arcTargets, numberOfArcs),
+                    rootState,
+                    numberOfWords
+            );
+        }
+
+        private void freezePath(int depth) {
+            for (int i = previousWordLength; i > depth; i--) {
+                path[i - 1].setLastArcTarget(freeze(path[i]));
+            }
+        }
+
+        private int freeze(PendingState pendingState) {
+            int hash = pendingState.hash();
+            int mask = register.length - 1;
+            int slot = hash & mask;
+            int state;
+
+            while ((state = register[slot] - 1) != -1) {
+                if (isEquivalent(state, pendingState)) {
+                    return state;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            state = addState(pendingState);
+            register[slot] = state + 1;
+
+            if (numberOfStates * 2 > register.length) {
+                rehash();
+            }
+
+            return state;
+        }
+
+        private boolean isEquivalent(int state, PendingState pendingState) {
+            int firstArc = firstArcs[state];
+
+            if (isFinal[state] != pendingState.isFinal || firstArcs[state + 1] - firstArc != pendingState.numberOfArcs) {
+                return false;
+            }
+
+            for (int i = 0; i < pendingState.numberOfArcs; i++) {
+                if (arcLabels[firstArc + i] != pendingState.labels[i] || arcTargets[firstArc + i] != pendingState.targets[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int addState(PendingState pendingState) {
+            if (numberOfStates + 1 == isFinal.length) {
+                isFinal = Arrays.copyOf(isFinal, isFinal.length * 2);
+                firstArcs = Arrays.copyOf(firstArcs, isFinal.length + 1);
+            }
+
+            if (numberOfArcs + pendingState.numberOfArcs > arcLabels.length) {
+                int capacity = Math.max(numberOfArcs + pendingState.numberOfArcs, arcLabels.length * 2);
+                arcLabels = Arrays.copyOf(arcLabels, capacity);
+                arcTargets = Arrays.copyOf(arcTargets, capacity);
+            }
+
+            System.arraycopy(pendingState.labels, 0, arcLabels, numberOfArcs, pendingState.numberOfArcs);
+            System.arraycopy(pendingState.targets, 0, arcTargets, numberOfArcs, pendingState.numberOfArcs);
+
+            int state = numberOfStates++;
+            isFinal[state] = pendingState.isFinal;
+            firstArcs[state] = numberOfArcs;
+            numberOfArcs += pendingState.numberOfArcs;
+            firstArcs[state + 1] = numberOfArcs;
+
+            return state;
+        }
+
+        private void rehash() {
+            int[] newRegister = new int[register.length * 2];
+            int mask = newRegister.length - 1;
+            int slot;
+
+            for (int state = 0; state < numberOfStates; state++) {
+                slot = hashState(state) & mask;
+
+                while (newRegister[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+
+                newRegister[slot] = state + 1;
+            }
+
+            register = newRegister;
+        }
+
+        private int hashState(int state) {
+            int hash = isFinal[state] ? 1 : 0;
+
+            for (int arc = firstArcs[state]; arc < firstArcs[state + 1]; arc++) {
+                hash = hash * 31 + arcLabels[arc];
+                hash = hash * 31 + arcTargets[arc];
+            }
+
+            return hash ^ (hash >>> 16);
+        }
+
+        private static class PendingState {
+            private byte[] labels = new byte[4];
+            private int[] targets = new int[4];
+            private int numberOfArcs = 0;
+            private boolean isFinal = false;
+
+            void clear() {
+                numberOfArcs = 0;
+                isFinal = false;
+            }
+
+            void addArc(byte label) {
+                if (numberOfArcs == labels.length) {
+                    labels = Arrays.copyOf(labels, labels.length * 2);
+                    targets = Arrays.copyOf(targets, targets.length * 2);
+                }
+
+                labels[numberOfArcs] = label;
+                targets[numberOfArcs] = -1;
+                numberOfArcs++;
+            }
+
+            void setLastArcTarget(int target) {
+                targets[numberOfArcs - 1] = target;
+            }
+
+            int hash() {
+                // This must give the same result as hashState for the frozen state.
+                int hash = isFinal ? 1 : 0;
+
+                for (int i = 0; i < numberOfArcs; i++) {
+                    hash = hash * 31 + labels[i];
+                    hash = hash * 31 + targets[i];
+                }
+
+                return hash ^ (hash >>> 16);
+            }
+        }
+    }
+}
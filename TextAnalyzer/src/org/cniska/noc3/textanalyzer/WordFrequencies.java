@@ -0,0 +1,152 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Counts how many times every word occurs. The counts are kept in an int array indexed by the vocabulary id of the
+ * word, so counting never boxes anything.
+ */
+class WordFrequencies {
+    private final Vocabulary words = new Vocabulary();
+    private int[] counts = new int[1 << 10];
+    private long numberOfWords = 0;
+
+    /**
+     * Counts the given word and returns its id.
+     */
+    int add(byte[] bytes, int offset, int length) {
+        int idOrExistingId = words.add(bytes, offset, length);
+        increment(idOrExistingId, 1);
+
+        return idOrExistingId >= 0 ? idOrExistingId : -(idOrExistingId + 1);
+    }
+
+    /**
+     * Adds the counts of the given frequencies to these. Words that are new to these frequencies are added in the
+     * order of the given frequencies.
+     */
+    void addAll(WordFrequencies other) {
+        int otherId;
+
+        for (int position = 0; position < other.words.size(); position++) {
+            otherId = other.words.getIdAt(position);
+            increment(words.add(other.words, otherId), other.counts[otherId]);
+        }
+    }
+
+    Vocabulary getWords() {
+        return words;
+    }
+
+    long getNumberOfWords() {
+        return numberOfWords;
+    }
+
+    int getCount(int id) {
+        return counts[id];
+    }
+
+    int getCount(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int id = words.indexOf(bytes, 0, bytes.length);
+
+        return id != -1 ? counts[id] : 0;
+    }
+
+    int getNumberOfHapaxes() {
+        int numberOfHapaxes = 0;
+
+        for (int id = 0; id < words.size(); id++) {
+            if (counts[id] == 1) {
+                numberOfHapaxes++;
+            }
+        }
+
+        return numberOfHapaxes;
+    }
+
+    /**
+     * Returns the ids of the given number of most frequent words, most frequent first. Words with the same count are
+     * ordered by their first occurrence.
+     *
+     * The words are selected with a bounded min-heap, so only k ids are kept no matter how large the vocabulary is.
+     */
+    int[] getMostFrequentWords(int k) {
+        int[] heap = new int[Math.min(k, words.size())];
+        int heapSize = 0;
+
+        for (int id = 0; id < words.size(); id++) {
+            if (heapSize < heap.length) {
+                heap[heapSize] = id;
+                siftUp(heap, heapSize++);
+            } else if (heapSize > 0 && isMoreFrequent(id, heap[0])) {
+                heap[0] = id;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+
+        // Popping the least frequent word to the end of the array leaves the words sorted with the most frequent first.
+        for (int end = heapSize - 1; end > 0; end--) {
+            int swap = heap[0];
+            heap[0] = heap[end];
+            heap[end] = swap;
+            siftDown(heap, 0, end);
+        }
+
+        return heap;
+    }
+
+    private void increment(int idOrExistingId, int count) {
+        int id = idOrExistingId >= 0 ? idOrExistingId : -(idOrExistingId + 1);
+
+        if (id == counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+
+        counts[id] += count;
+        numberOfWords += count;
+    }
+
+    private boolean isMoreFrequent(int id, int otherId) {
+        return counts[id] > counts[otherId] || (counts[id] == counts[otherId] && id < otherId);
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int parent;
+
+        while (index > 0) {
+            parent = (index - 1) / 2;
+
+            if (!isMoreFrequent(heap[parent], heap[index])) {
+                break;
+            }
+
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int index, int heapSize) {
+        int child;
+
+        while ((child = index * 2 + 1) < heapSize) {
+            if (child + 1 < heapSize && isMoreFrequent(heap[child], heap[child + 1])) {
+                child++;
+            }
+
+            if (!isMoreFrequent(heap[index], heap[child])) {
+                break;
+            }
+
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swap = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swap;
+    }
+}
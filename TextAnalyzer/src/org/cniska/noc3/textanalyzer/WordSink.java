@@ -0,0 +1,11 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+
+/**
+ * Receives UTF-8 encoded words one at a time.
+ */
+interface WordSink {
+
+    void accept(byte[] bytes, int offset, int length) throws IOException;
+}
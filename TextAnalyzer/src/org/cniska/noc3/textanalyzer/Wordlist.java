@@ -1,66 +1,450 @@
 package org.cniska.noc3.textanalyzer;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
+// The timers of the stages are only opened and closed around the work they measure, never referenced in between.
+@SuppressWarnings("try")
 class Wordlist {
-    private ArrayList<String> words;
+    private static final long MAPPED_SEGMENT_SIZE = 1 << 30;
+    private static final int COMPRESSED_READ_BUFFER_SIZE = 1 << 16;
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MINIMUM_EXPECTED_NUMBER_OF_WORDS = 1 << 16;
+    private static final String BLOOM_FILTER_FILE_SUFFIX = ".bloom";
 
-    void readFromFile(String filePath) {
-        BufferedReader reader;
-        String line;
+    private Vocabulary words = new Vocabulary();
+    private int numberOfWordsInLastSnapshot = 0;
+    private final double falsePositiveRate;
+    private BloomFilter bloomFilter;
 
-        ArrayList<String> readWords = new ArrayList<>();
+    Wordlist() {
+        this(DEFAULT_FALSE_POSITIVE_RATE);
+    }
 
+    /**
+     * @param falsePositiveRate The false positive rate of the Bloom filter that is used to detect new words
+     */
+    Wordlist(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+        this.bloomFilter = new BloomFilter(MINIMUM_EXPECTED_NUMBER_OF_WORDS, falsePositiveRate);
+    }
+
+    void readFromFile(String filePath) {
         UI.outputLine("Läser in ordlistan: " + filePath);
 
-        try {
-            reader = new BufferedReader(new FileReader(filePath));
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.READ)) {
+            readWordsFromFile(Paths.get(filePath), words::add);
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+
+        numberOfWordsInLastSnapshot = words.size();
+        readBloomFilter(filePath);
 
-            while ((line = reader.readLine()) != null) {
-                readWords.add(line.replaceAll("[ ,]+", ""));
+        UI.outputLine("- Ordlistan innehöll " + words.size() + " olika ord");
+    }
+
+    /**
+     * Reads the words of a wordlist file into the given sink. A file whose name ends with .gz is decompressed while it
+     * is read, as written by WordlistWriter, and any other file is mapped into memory.
+     */
+    private static void readWordsFromFile(Path path, WordSink sink) throws IOException {
+        if (path.getFileName().toString().endsWith(COMPRESSED_FILE_SUFFIX)) {
+            try (InputStream input = new GZIPInputStream(Files.newInputStream(path), COMPRESSED_READ_BUFFER_SIZE)) {
+                Metrics.increment(Metrics.Counter.BYTES_READ, Files.size(path));
+                readWordsFromStream(input, sink);
             }
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                readWordsFromChannel(channel, sink);
+            }
+        }
+    }
+
+    private static void readWordsFromChannel(FileChannel channel, WordSink sink) throws IOException {
+        long size = channel.size();
+        Metrics.increment(Metrics.Counter.BYTES_READ, size);
+        WordTokenizer tokenizer = new WordTokenizer();
+
+        // The file is mapped in segments so that files larger than 2 GB can be read as well. A word that crosses a
+        // segment boundary simply carries over in the tokenizer.
+        for (long position = 0; position < size; position += MAPPED_SEGMENT_SIZE) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_SEGMENT_SIZE, size - position));
+
+            if (position == 0) {
+                skipByteOrderMark(segment);
+            }
+
+            tokenizer.tokenize(segment, sink);
+        }
+
+        tokenizer.finish(sink);
+    }
+
+    private static void readWordsFromStream(InputStream input, WordSink sink) throws IOException {
+        WordTokenizer tokenizer = new WordTokenizer();
+        ByteBuffer chunk = ByteBuffer.allocate(COMPRESSED_READ_BUFFER_SIZE);
+        boolean isFirstChunk = true;
+        int numberOfBytesRead;
+
+        while ((numberOfBytesRead = input.read(chunk.array(), chunk.position(), chunk.remaining())) != -1) {
+            chunk.position(chunk.position() + numberOfBytesRead);
+
+            // The byte order mark can only be recognized once the first three bytes have been read.
+            if (isFirstChunk && chunk.position() < 3) {
+                continue;
+            }
+
+            chunk.flip();
+
+            if (isFirstChunk) {
+                skipByteOrderMark(chunk);
+                isFirstChunk = false;
+            }
+
+            tokenizer.tokenize(chunk, sink);
+            chunk.clear();
+        }
+
+        chunk.flip();
+        tokenizer.tokenize(chunk, sink);
+        tokenizer.finish(sink);
+    }
+
+    private static void skipByteOrderMark(ByteBuffer segment) {
+        if (segment.remaining() >= 3
+                && segment.get(0) == (byte) 0xEF && segment.get(1) == (byte) 0xBB && segment.get(2) == (byte) 0xBF) {
+            segment.position(3);
+        }
+    }
+
+    /**
+     * Splits bytes into the words of a wordlist. A word can be split over several calls to tokenize, so that a file can
+     * be fed in pieces.
+     */
+    private static class WordTokenizer {
+        private byte[] word = new byte[64];
+        private int wordLength = 0;
+
+        void tokenize(ByteBuffer bytes, WordSink sink) throws IOException {
+            byte b;
+
+            while (bytes.hasRemaining()) {
+                b = bytes.get();
+
+                if (b == ',' || b == '\n' || b == '\r') {
+                    finish(sink);
+                } else if (b != ' ') {
+                    if (wordLength == word.length) {
+                        word = Arrays.copyOf(word, word.length * 2);
+                    }
+
+                    word[wordLength++] = b;
+                }
+            }
+        }
+
+        void finish(WordSink sink) throws IOException {
+            if (wordLength > 0) {
+                sink.accept(word, 0, wordLength);
+                wordLength = 0;
+            }
+        }
+    }
+
+    void readFromBinaryFile(String filePath) {
+        UI.outputLine("Läser in ordlistan: " + filePath);
+
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.READ)) {
+            BinaryWordlist binaryWordlist = BinaryWordlist.open(Paths.get(filePath), true);
+
+            binaryWordlist.forEachWord(words::add);
+            Metrics.increment(Metrics.Counter.BYTES_READ, Files.size(Paths.get(filePath)));
         } catch (IOException e) {
             UI.outputLine("Ett fel uppstod");
         }
 
-        words = readWords.stream()
-                .distinct()
-                .collect(Collectors.toCollection(ArrayList::new));
+        numberOfWordsInLastSnapshot = words.size();
+        readBloomFilter(filePath);
 
         UI.outputLine("- Ordlistan innehöll " + words.size() + " olika ord");
     }
 
-    void addWordsThatDontExist(ArrayList<String> wordsToAdd) {
-        words = Stream.concat(words.stream(), wordsToAdd.stream())
-                .distinct()
-                .collect(Collectors.toCollection(ArrayList::new));
+    /**
+     * Combines the given wordlist files into a single wordlist without duplicates, without ever keeping all the words
+     * in memory. The words are spilled to the given temporary directory and the memory used stays roughly within the
+     * given budget. With preserveOrder the words are written in the order they first occur, just like when the files
+     * are read into a wordlist one after the other.
+     */
+    static void deduplicateFiles(List<String> inputFilePaths, String outputFilePath, Path temporaryDirectory, long memoryBudget, boolean preserveOrder) {
+        UI.outputLine("Slår ihop ordlistor utan att läsa in dem i minnet: " + outputFilePath);
+
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.DEDUPLICATE);
+             ExternalDeduplicator deduplicator = new ExternalDeduplicator(temporaryDirectory, memoryBudget);
+             WordlistWriter writer = new WordlistWriter(Paths.get(outputFilePath))) {
+            for (String inputFilePath : inputFilePaths) {
+                UI.outputLine("- Läser in ordlistan: " + inputFilePath);
+
+                readWordsFromFile(Paths.get(inputFilePath), deduplicator);
+            }
+
+            deduplicator.finish(writer::writeWord, preserveOrder);
+            writer.commit();
+            countBytesWritten(outputFilePath);
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+    }
+
+    Vocabulary addWordsThatDontExist(Vocabulary wordsToAdd) {
+        Vocabulary addedWords = new Vocabulary();
+        int id, hash;
+        boolean isAdded;
+
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.MERGE)) {
+            // The vocabulary keeps its insertion order, so new words end up after the existing ones just like before. A
+            // word the Bloom filter has never seen is definitely new and is added without comparing it to any word.
+            for (int position = 0; position < wordsToAdd.size(); position++) {
+                id = wordsToAdd.getIdAt(position);
+                hash = wordsToAdd.getHash(id);
+
+                if (!bloomFilter.mightContain(hash)) {
+                    words.addNew(wordsToAdd, id);
+                    isAdded = true;
+                } else {
+                    isAdded = words.add(wordsToAdd, id) >= 0;
+
+                    if (isAdded) {
+                        bloomFilter.recordFalsePositive();
+                    }
+                }
+
+                if (isAdded) {
+                    addedWords.addNew(wordsToAdd, id);
+                    addToBloomFilter(hash);
+                }
+            }
+        }
+
+        Metrics.increment(Metrics.Counter.NEW_WORDS, addedWords.size());
+
+        return addedWords;
+    }
+
+    BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    private void addToBloomFilter(int hash) {
+        if (bloomFilter.isFull()) {
+            rebuildBloomFilter();
+        } else {
+            bloomFilter.add(hash);
+        }
+    }
+
+    private void rebuildBloomFilter() {
+        BloomFilter previousBloomFilter = bloomFilter;
+        bloomFilter = new BloomFilter(Math.max(MINIMUM_EXPECTED_NUMBER_OF_WORDS, words.size() * 2), falsePositiveRate);
+        bloomFilter.addStatisticsFrom(previousBloomFilter);
+
+        for (int id = 0; id < words.size(); id++) {
+            bloomFilter.add(words.getHash(id));
+        }
+    }
+
+    /**
+     * Uses the Bloom filter saved next to the given wordlist file if it was built from exactly the words that were
+     * read, and builds a new one otherwise. Comparing the number of words is not enough, as the wordlist may have been
+     * edited or replaced by another list of the same size since the filter was saved.
+     */
+    private void readBloomFilter(String filePath) {
+        Path bloomFilterPath = Paths.get(filePath + BLOOM_FILTER_FILE_SUFFIX);
+
+        try {
+            if (Files.exists(bloomFilterPath)) {
+                BloomFilter savedBloomFilter = BloomFilter.readFromFile(bloomFilterPath);
+
+                if (savedBloomFilter.getNumberOfWords() == words.size()
+                        && savedBloomFilter.getFingerprint() == fingerprintWords()
+                        && savedBloomFilter.getFalsePositiveRate() == falsePositiveRate
+                        && !savedBloomFilter.isFull()) {
+                    bloomFilter = savedBloomFilter;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The saved filter is only an optimization, so we can simply build a new one.
+        }
+
+        rebuildBloomFilter();
+    }
+
+    private long fingerprintWords() {
+        long fingerprint = 0;
+
+        for (int id = 0; id < words.size(); id++) {
+            fingerprint += BloomFilter.fingerprintOf(words.getHash(id));
+        }
+
+        return fingerprint;
+    }
+
+    private static void countBytesWritten(String filePath) throws IOException {
+        Metrics.increment(Metrics.Counter.BYTES_WRITTEN, Files.size(Paths.get(filePath)));
+    }
+
+    private void writeBloomFilter(String filePath) throws IOException {
+        bloomFilter.writeToFile(Paths.get(filePath + BLOOM_FILTER_FILE_SUFFIX));
     }
 
     void shuffleWords() {
-        Collections.shuffle(words);
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.SHUFFLE)) {
+            words.shuffle(new Random());
+        }
     }
 
     void writeToFile(String filePath) {
-        File file = new File(filePath);
-        BufferedWriter writer;
-
         UI.outputLine("Skriver ut ordlistan: " + filePath);
 
         try {
-            file.createNewFile();
-            writer = new BufferedWriter(new FileWriter(file));
+            saveToFile(filePath);
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+    }
+
+    /**
+     * Writes the whole wordlist like writeToFile, but lets the caller know if it fails.
+     */
+    void saveToFile(String filePath) throws IOException {
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.WRITE);
+             WordlistWriter writer = new WordlistWriter(Paths.get(filePath))) {
+            for (int position = 0; position < words.size(); position++) {
+                writer.writeWord(words, words.getIdAt(position));
+            }
+
+            writer.commit();
+            countBytesWritten(filePath);
+            writeBloomFilter(filePath);
+            numberOfWordsInLastSnapshot = words.size();
+        }
+    }
+
+    /**
+     * Passes the words that were added after the first given number of words to the sink, in the order they were
+     * added.
+     */
+    void forEachWordAddedAfter(int numberOfWords, WordSink sink) throws IOException {
+        byte[] bytes = new byte[64];
+        int length;
+
+        for (int id = numberOfWords; id < words.size(); id++) {
+            length = words.getWordLength(id);
 
-            for (String word : words) {
-                writer.write(word + ",");
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
             }
 
-            writer.close();
+            words.copyWord(id, bytes, 0);
+            sink.accept(bytes, 0, length);
+        }
+    }
+
+    void writeNewWordsToFile(String filePath) {
+        UI.outputLine("Skriver ut de nya orden i ordlistan: " + filePath);
+
+        // Ids are given in insertion order and are not affected by shuffling, so the words added since the last
+        // snapshot are simply the ones with the highest ids.
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.WRITE);
+             WordlistWriter writer = new WordlistWriter(Paths.get(filePath))) {
+            for (int id = numberOfWordsInLastSnapshot; id < words.size(); id++) {
+                writer.writeWord(words, id);
+            }
+
+            writer.commit();
+            countBytesWritten(filePath);
+            numberOfWordsInLastSnapshot = words.size();
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+    }
+
+    void writeToBinaryFile(String filePath, boolean withIndex) {
+        UI.outputLine("Skriver ut ordlistan: " + filePath);
+
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.WRITE)) {
+            BinaryWordlist.write(words, Paths.get(filePath), withIndex);
+            countBytesWritten(filePath);
+            writeBloomFilter(filePath);
+            numberOfWordsInLastSnapshot = words.size();
+        } catch (IOException e) {
+            UI.outputLine("Ett fel uppstod");
+        }
+    }
+
+    /**
+     * Builds a compact automaton of the words, which supports prefix and range lookups in sorted order.
+     */
+    WordAutomaton buildAutomaton() {
+        WordAutomaton.Builder builder = new WordAutomaton.Builder();
+        byte[] bytes = new byte[64];
+        int length;
+
+        for (int id : words.getIdsInSortedOrder()) {
+            length = words.getWordLength(id);
+
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+
+            words.copyWord(id, bytes, 0);
+            builder.accept(bytes, 0, length);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Builds an automaton straight from a binary wordlist, whose words are already sorted, without loading the words
+     * into memory first.
+     */
+    static WordAutomaton readAutomatonFromBinaryFile(String filePath) {
+        UI.outputLine("Läser in ordlistan: " + filePath);
+
+        WordAutomaton.Builder builder = new WordAutomaton.Builder();
+
+        try {
+            BinaryWordlist.open(Paths.get(filePath), true).forEachWord(builder);
         } catch (IOException e) {
             UI.outputLine("Ett fel uppstod");
+            builder = new WordAutomaton.Builder();
+        }
+
+        WordAutomaton automaton = builder.build();
+
+        UI.outputLine("- Ordlistan innehöll " + automaton.getNumberOfWords() + " olika ord");
+
+        return automaton;
+    }
+
+    /**
+     * Builds an index for finding the words closest to an unknown word, see FuzzyIndex.
+     */
+    FuzzyIndex buildFuzzyIndex(int maximumDistance) {
+        try (Metrics.Timer timer = Metrics.startTimer(Metrics.Stage.INDEX)) {
+            return FuzzyIndex.build(words, maximumDistance);
         }
     }
 
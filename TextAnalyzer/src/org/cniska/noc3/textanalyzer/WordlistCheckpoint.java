@@ -0,0 +1,253 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the state of a long running analysis on disk, so that it can continue where it left off after a restart.
+ *
+ * The state is a snapshot of the whole wordlist, the names of the books that were in it, and an append-only log of
+ * everything that has happened since: every checkpoint appends the words added since the previous one together with
+ * the books they came from. A checkpoint only costs as much as the words it adds. Once the log has grown larger than
+ * the snapshot it is compacted into a new snapshot.
+ *
+ * Every entry in the log has a length and a checksum, so an entry that was only partly written when the process died
+ * is noticed and dropped. The snapshot files are replaced atomically and are written before the log is emptied, so the
+ * state on disk is complete at every point, adding the same words twice is harmless.
+ */
+class WordlistCheckpoint {
+    private static final String SNAPSHOT_FILE_NAME = "wordlist.csv";
+    private static final String BOOKS_FILE_NAME = "books.txt";
+    private static final String LOG_FILE_NAME = "added.log";
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final long MINIMUM_LOG_SIZE_TO_COMPACT = 1 << 20;
+
+    private final Path snapshotPath;
+    private final Path booksPath;
+    private final Path logPath;
+    private int numberOfWordsCheckpointed = 0;
+
+    WordlistCheckpoint(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE_NAME);
+        this.booksPath = directory.resolve(BOOKS_FILE_NAME);
+        this.logPath = directory.resolve(LOG_FILE_NAME);
+    }
+
+    boolean hasSnapshot() {
+        return Files.exists(snapshotPath);
+    }
+
+    /**
+     * Reads the snapshot, if there is one, into the given wordlist and replays the log on top of it. Returns the names
+     * of every book that has been added so far.
+     */
+    Set<String> restore(Wordlist wordlist) throws IOException {
+        Set<String> books = new LinkedHashSet<>();
+
+        if (hasSnapshot()) {
+            wordlist.readFromFile(snapshotPath.toString());
+        }
+
+        if (Files.exists(booksPath)) {
+            books.addAll(Files.readAllLines(booksPath, StandardCharsets.UTF_8));
+        }
+
+        if (Files.exists(logPath)) {
+            Vocabulary loggedWords = new Vocabulary();
+            int numberOfEntries = replayLog(loggedWords, books);
+
+            wordlist.addWordsThatDontExist(loggedWords);
+
+            UI.outputLine("- Loggen innehöll " + numberOfEntries + " kontrollpunkter med " + loggedWords.size() + " ord");
+        }
+
+        numberOfWordsCheckpointed = wordlist.getNumberOfWords();
+
+        return books;
+    }
+
+    /**
+     * Appends the words added to the wordlist since the previous checkpoint to the log, together with the books they
+     * came from, and makes sure they are on disk before returning. If the entry cannot be written, the log is cut back
+     * to where it was, so that a later entry is never appended after a partial one and lost with it on replay.
+     */
+    void append(Wordlist wordlist, Collection<String> newBooks) throws IOException {
+        if (wordlist.getNumberOfWords() == numberOfWordsCheckpointed && newBooks.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream entry = new DataOutputStream(bytes);
+
+        entry.writeInt(newBooks.size());
+
+        for (String book : newBooks) {
+            entry.writeUTF(book);
+        }
+
+        entry.writeInt(wordlist.getNumberOfWords() - numberOfWordsCheckpointed);
+        wordlist.forEachWordAddedAfter(numberOfWordsCheckpointed, (word, offset, length) -> {
+            entry.writeInt(length);
+            entry.write(word, offset, length);
+        });
+        entry.flush();
+
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt(checksum(payload, payload.length)).put(payload).flip();
+
+        long logSize = Files.exists(logPath) ? Files.size(logPath) : 0;
+
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        } catch (IOException e) {
+            truncateLog(logSize);
+            throw e;
+        }
+
+        numberOfWordsCheckpointed = wordlist.getNumberOfWords();
+    }
+
+    boolean shouldCompact() throws IOException {
+        if (!Files.exists(logPath)) {
+            return false;
+        }
+
+        long logSize = Files.size(logPath);
+
+        return logSize >= MINIMUM_LOG_SIZE_TO_COMPACT && (!hasSnapshot() || logSize > Files.size(snapshotPath));
+    }
+
+    /**
+     * Writes a new snapshot of the whole wordlist and the given books, and empties the log.
+     */
+    void compact(Wordlist wordlist, Collection<String> books) throws IOException {
+        UI.outputLine("Komprimerar kontrollpunkten");
+
+        wordlist.saveToFile(snapshotPath.toString());
+
+        Path temporaryPath = booksPath.resolveSibling(booksPath.getFileName() + "." + System.nanoTime() + ".tmp");
+
+        try {
+            Files.write(temporaryPath, books, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW);
+            Files.move(temporaryPath, booksPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+
+        Files.deleteIfExists(logPath);
+        numberOfWordsCheckpointed = wordlist.getNumberOfWords();
+    }
+
+    /**
+     * Cuts the log back to the given size. A RandomAccessFile is used rather than a FileChannel, as a FileChannel cannot
+     * be used at all by a thread that has been interrupted, which may be why the entry could not be written.
+     */
+    private void truncateLog(long size) {
+        try (RandomAccessFile file = new RandomAccessFile(logPath.toFile(), "rw")) {
+            if (file.length() > size) {
+                file.setLength(size);
+                file.getFD().sync();
+            }
+        } catch (IOException e) {
+            // The partial entry is dropped on the next restore instead, along with any entries after it.
+            UI.outputLine("Ett fel uppstod när loggen skulle återställas");
+        }
+    }
+
+    /**
+     * Reads every complete entry of the log and cuts off anything after the last one, which can only be an entry that
+     * was being written when the process died.
+     */
+    private int replayLog(Vocabulary words, Set<String> books) throws IOException {
+        int numberOfEntries = 0;
+        long validLength = 0;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath), 1 << 16))) {
+            long logSize = Files.size(logPath);
+            byte[] payload = new byte[1 << 12];
+
+            while (validLength + ENTRY_HEADER_SIZE <= logSize) {
+                int length = input.readInt();
+                int expectedChecksum = input.readInt();
+
+                if (length < 0 || validLength + ENTRY_HEADER_SIZE + length > logSize) {
+                    break;
+                }
+
+                if (length > payload.length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+
+                input.readFully(payload, 0, length);
+
+                if (checksum(payload, length) != expectedChecksum) {
+                    break;
+                }
+
+                readEntry(payload, length, words, books);
+                validLength += ENTRY_HEADER_SIZE + length;
+                numberOfEntries++;
+            }
+        }
+
+        if (validLength < Files.size(logPath)) {
+            UI.outputLine("- Loggen slutade med en ofullständig kontrollpunkt som togs bort");
+
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+        }
+
+        return numberOfEntries;
+    }
+
+    private static void readEntry(byte[] payload, int length, Vocabulary words, Set<String> books) throws IOException {
+        DataInputStream entry = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+        List<String> entryBooks = new ArrayList<>();
+        byte[] word = new byte[64];
+
+        for (int numberOfBooks = entry.readInt(); numberOfBooks > 0; numberOfBooks--) {
+            entryBooks.add(entry.readUTF());
+        }
+
+        for (int numberOfWords = entry.readInt(); numberOfWords > 0; numberOfWords--) {
+            int wordLength = entry.readInt();
+
+            if (wordLength > word.length) {
+                word = new byte[Math.max(wordLength, word.length * 2)];
+            }
+
+            entry.readFully(word, 0, wordLength);
+            words.add(word, 0, wordLength);
+        }
+
+        books.addAll(entryBooks);
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+
+        return (int) crc.getValue();
+    }
+}
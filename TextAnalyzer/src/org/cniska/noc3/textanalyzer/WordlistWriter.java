@@ -0,0 +1,136 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes words to a wordlist file in the CSV format.
+ *
+ * The words are encoded straight into a large reusable buffer that is written through a file channel, gzip
+ * compressed if the file name ends with .gz. Everything is written to a temporary file next to the target, which
+ * replaces the target atomically on commit, so a failed write never leaves a half-written wordlist behind.
+ */
+class WordlistWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final FileChannel channel;
+    private final GZIPOutputStream compressedOutput;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean isCommitted = false;
+
+    WordlistWriter(Path path) throws IOException {
+        this.path = path;
+
+        // The temporary file is created like any other file, so that the wordlist gets the usual file permissions.
+        this.temporaryPath = path.resolveSibling(path.getFileName() + "." + System.nanoTime() + ".tmp");
+        this.channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        try {
+            this.compressedOutput = path.getFileName().toString().endsWith(".gz")
+                    ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)
+                    : null;
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(temporaryPath);
+            throw e;
+        }
+    }
+
+    void writeWord(Vocabulary words, int id) throws IOException {
+        int length = words.getWordLength(id);
+
+        if (length + 1 > buffer.remaining()) {
+            flush();
+
+            // A word that does not fit in an empty buffer would be extremely unusual, but is still written correctly.
+            if (length + 1 > buffer.capacity()) {
+                byte[] word = new byte[length];
+                words.copyWord(id, word, 0);
+                writeWord(word, 0, length);
+                return;
+            }
+        }
+
+        words.copyWord(id, buffer.array(), buffer.position());
+        buffer.position(buffer.position() + length);
+        buffer.put((byte) ',');
+    }
+
+    void writeWord(byte[] bytes, int offset, int length) throws IOException {
+        if (length + 1 > buffer.remaining()) {
+            flush();
+
+            if (length + 1 > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes, offset, length));
+                write(ByteBuffer.wrap(new byte[]{','}));
+                return;
+            }
+        }
+
+        buffer.put(bytes, offset, length);
+        buffer.put((byte) ',');
+    }
+
+    /**
+     * Makes sure everything is written to disk and replaces the target file with the written file.
+     */
+    void commit() throws IOException {
+        flush();
+
+        if (compressedOutput != null) {
+            compressedOutput.finish();
+            compressedOutput.flush();
+        }
+
+        channel.force(true);
+        channel.close();
+
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        isCommitted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isCommitted) {
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        if (compressedOutput != null) {
+            compressedOutput.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+            return;
+        }
+
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.cniska.noc3.textanalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Generates Swedish looking text for the benchmarks. The words are drawn from a fixed vocabulary following a Zipf
+ * distribution, where a skew of 0 makes every word equally likely and a skew of 1 is close to natural language.
+ */
+class SyntheticCorpus {
+    private static final char[] LETTERS = "abcdefghijklmnopqrstuvwxyzåäö".toCharArray();
+    private static final String[] PUNCTUATION = {"", "", "", "", ",", ".", "!", "?", ";", "\"", "-"};
+
+    private final String[] vocabulary;
+    private final double[] cumulativeProbabilities;
+    private final Random random;
+
+    SyntheticCorpus(int vocabularySize, double skew, long seed) {
+        this.random = new Random(seed);
+        this.vocabulary = createVocabulary(vocabularySize);
+        this.cumulativeProbabilities = new double[vocabularySize];
+
+        double total = 0;
+
+        for (int i = 0; i < vocabularySize; i++) {
+            total += 1.0 / Math.pow(i + 1, skew);
+            cumulativeProbabilities[i] = total;
+        }
+
+        for (int i = 0; i < vocabularySize; i++) {
+            cumulativeProbabilities[i] /= total;
+        }
+    }
+
+    String[] getVocabulary() {
+        return vocabulary;
+    }
+
+    String createText(int numberOfWords) {
+        StringBuilder text = new StringBuilder(numberOfWords * 8);
+        String word;
+
+        for (int i = 0; i < numberOfWords; i++) {
+            word = nextWord();
+
+            if (random.nextInt(10) == 0) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+
+            text.append(word).append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+            text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+
+        return text.toString();
+    }
+
+    Path writeText(int numberOfWords) throws IOException {
+        Path file = Files.createTempFile("corpus", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, createText(numberOfWords).getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    Path writeWordlist(int numberOfWords) throws IOException {
+        Path file = Files.createTempFile("ordlista", ".csv");
+        file.toFile().deleteOnExit();
+        Files.write(file, Arrays.asList(vocabulary).subList(0, numberOfWords), StandardCharsets.UTF_8);
+
+        return file;
+    }
+
+    private String nextWord() {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+
+        return vocabulary[Math.min(index >= 0 ? index : -(index + 1), vocabulary.length - 1)];
+    }
+
+    private String[] createVocabulary(int size) {
+        HashSet<String> words = new HashSet<>();
+        String[] vocabulary = new String[size];
+        StringBuilder word = new StringBuilder();
+        int i = 0;
+
+        while (i < size) {
+            word.setLength(0);
+
+            for (int length = 2 + random.nextInt(11); length > 0; length--) {
+                word.append(LETTERS[random.nextInt(LETTERS.length)]);
+            }
+
+            if (words.add(word.toString())) {
+                vocabulary[i++] = word.toString();
+            }
+        }
+
+        return vocabulary;
+    }
+}
@@ -0,0 +1,63 @@
+package org.cniska.noc3.textanalyzer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"1000000"})
+    public int numberOfWords;
+
+    @Param({"10000", "200000"})
+    public int vocabularySize;
+
+    @Param({"0.0", "1.0"})
+    public double skew;
+
+    private String text;
+    private Path file;
+    private BookSource source;
+
+    @Setup
+    public void setUp() throws IOException {
+        UI.setOutputEnabled(false);
+
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabularySize, skew, 1);
+        text = corpus.createText(numberOfWords);
+        file = corpus.writeText(numberOfWords);
+        source = new BookSources(StandardCharsets.UTF_8, null).resolveBook(file.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public WordFrequencies tokenize() throws IOException {
+        WordFrequencies frequencies = new WordFrequencies();
+        new Tokenizer().tokenize(new StringReader(text), frequencies);
+
+        return frequencies;
+    }
+
+    @Benchmark
+    public Book readWordsFromSource() {
+        Book book = new Book();
+        book.readWordsFromSource(source);
+
+        return book;
+    }
+}
@@ -0,0 +1,94 @@
+package org.cniska.noc3.textanalyzer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordlistBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int wordlistSize;
+
+    @Param({"200000"})
+    public int numberOfWordsInBook;
+
+    @Param({"0.0", "1.0"})
+    public double skew;
+
+    private Path wordlistFile;
+    private Path outputFile;
+    private Vocabulary wordsInBook;
+
+    @Setup
+    public void setUp() throws IOException {
+        UI.setOutputEnabled(false);
+
+        // The book draws from a vocabulary that is a bit larger than the wordlist, so that merging it finds new words.
+        SyntheticCorpus corpus = new SyntheticCorpus(wordlistSize + wordlistSize / 10, skew, 1);
+        wordlistFile = corpus.writeWordlist(wordlistSize);
+        outputFile = Files.createTempFile("ordlista", ".csv");
+
+        WordFrequencies frequencies = new WordFrequencies();
+        new Tokenizer().tokenize(new StringReader(corpus.createText(numberOfWordsInBook)), frequencies);
+        wordsInBook = frequencies.getWords();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(wordlistFile);
+        Files.deleteIfExists(outputFile);
+        Files.deleteIfExists(Paths.get(outputFile + ".bloom"));
+    }
+
+    /**
+     * A freshly loaded wordlist for the benchmarks that modify it.
+     */
+    @State(Scope.Thread)
+    public static class LoadedWordlist {
+        Wordlist wordlist;
+
+        @Setup(Level.Invocation)
+        public void setUp(WordlistBenchmark benchmark) {
+            wordlist = new Wordlist();
+            wordlist.readFromFile(benchmark.wordlistFile.toString());
+        }
+    }
+
+    @Benchmark
+    public Wordlist readFromFile() {
+        Wordlist wordlist = new Wordlist();
+        wordlist.readFromFile(wordlistFile.toString());
+
+        return wordlist;
+    }
+
+    @Benchmark
+    public Vocabulary addWordsThatDontExist(LoadedWordlist loaded) {
+        return loaded.wordlist.addWordsThatDontExist(wordsInBook);
+    }
+
+    @Benchmark
+    public Wordlist shuffleWords(LoadedWordlist loaded) {
+        loaded.wordlist.shuffleWords();
+
+        return loaded.wordlist;
+    }
+
+    @Benchmark
+    public Wordlist writeToFile(LoadedWordlist loaded) {
+        loaded.wordlist.writeToFile(outputFile.toString());
+
+        return loaded.wordlist;
+    }
+}